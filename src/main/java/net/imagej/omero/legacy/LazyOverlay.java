@@ -27,7 +27,19 @@ package net.imagej.omero.legacy;
 
 import java.awt.Color;
 import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
 
 import ij.ImagePlus;
 import ij.gui.Overlay;
@@ -35,28 +47,111 @@ import ij.gui.Roi;
 import ij.measure.ResultsTable;
 
 import net.imagej.omero.roi.LazyROITree;
+import net.imagej.omero.roi.OMERORealMask;
 import net.imglib2.roi.MaskPredicate;
 
+import omero.gateway.model.ShapeData;
+
+import org.scijava.Context;
+import org.scijava.app.StatusService;
 import org.scijava.convert.ConvertService;
 import org.scijava.util.TreeNode;
 
 /**
- * An {@link ij.gui.Overlay} which is backed by a {@link LazyROITree}. This
+ * A {@link PlaneOverlay} which is backed by a {@link LazyROITree}. This
  * causes the ROIs to be loaded from the OMERO server only when requested.
+ * <p>
+ * Cropping an overlay whose ROIs have not been loaded yet does not load them.
+ * Instead the crop is recorded, shapes which are known to be cropped away are
+ * skipped once the ROIs are loaded, and the crop is applied to the remaining
+ * ROIs as they are converted. Likewise style changes and translations are
+ * recorded and applied to each ROI as it is converted.
+ * </p>
+ * <p>
+ * {@link #duplicate() Duplicates} share the source and, once loaded, the
+ * converted ROIs. A shared ROI is only cloned when it is first modified or
+ * retrieved through one of the overlays, so each ROI is cloned at most once,
+ * and a duplicate whose ROIs are never accessed copies nothing.
+ * </p>
+ * <p>
+ * The ROIs are loaded at most once, even if requested from several threads;
+ * other threads wait for the loading thread to finish. {@link #loadROIs()} only
+ * adds the ROIs once all of them have been converted, so the overlay is never
+ * seen partially filled. If loading fails, the overlay stays unloaded and the
+ * next request tries again.
+ * </p>
+ * <p>
+ * Loading reports its progress through the {@link StatusService} of the
+ * {@link ConvertService}'s context, and can be stopped through
+ * {@link #cancelLoading()} or by interrupting the loading thread. A cancelled
+ * load discards the ROIs converted so far, and leaves the overlay unloaded.
+ * </p>
+ * <p>
+ * {@link #loadROIs(ImagePlus)} loads the ROIs of the image's current plane
+ * first, and the remaining ROIs in the background. While those load, the
+ * overlay is partially filled: {@link #size()}, {@link #get(int)} and the
+ * plane lookups return the ROIs loaded so far, so the image can be drawn,
+ * while all other methods, including {@link #toArray()}, wait for the
+ * remaining ROIs.
+ * </p>
  *
  * @author Alison Walter
  */
-public class LazyOverlay extends ij.gui.Overlay {
+public class LazyOverlay extends PlaneOverlay {
+
+	/** Margin, in pixels, around crop bounds within which shapes are kept. */
+	private static final double BOUNDS_MARGIN = 2;
+
+	/** Number of ROIs added at once while loading in the background. */
+	private static final int BATCH_SIZE = 256;
+
+	/** Loads the remaining ROIs after those of the current plane. */
+	private static final ExecutorService LOADER = Executors.newCachedThreadPool(
+		runnable -> {
+			final Thread thread = new Thread(runnable, "LazyOverlay loader");
+			thread.setDaemon(true);
+			return thread;
+		});
 
 	private final LazyROITree source;
 	private final ConvertService convert;
-	private boolean roisLoaded;
+	private final List<Predicate<ShapeData>> filters;
+	private final List<UnaryOperator<Roi>> operations;
+	private final AtomicReference<Status> status = new AtomicReference<>(
+		Status.UNLOADED);
+
+	/**
+	 * The ROIs shared between this overlay and its duplicates, with the number
+	 * of overlays holding each of them. The map itself is shared between all
+	 * these overlays, and guards itself.
+	 */
+	private volatile Map<Roi, int[]> shared;
+
+	/** Whether ROI names are drawn, also recorded while unloaded. */
+	private boolean names;
 
 	public LazyOverlay(final LazyROITree source, final ConvertService convert) {
 		this.source = source;
 		this.convert = convert;
-		roisLoaded = source.areROIsLoaded();
-		if (roisLoaded) loadROIs();
+		filters = new ArrayList<>();
+		operations = new ArrayList<>();
+	}
+
+	/**
+	 * Creates an unloaded copy of the given overlay, with the same filters and
+	 * draw settings.
+	 */
+	private LazyOverlay(final LazyOverlay overlay) {
+		source = overlay.source;
+		convert = overlay.convert;
+		filters = new ArrayList<>(overlay.filters);
+		operations = new ArrayList<>(overlay.operations);
+		drawLabels(overlay.getDrawLabels());
+		drawBackgrounds(overlay.getDrawBackground());
+		setLabelColor(overlay.getLabelColor());
+		setLabelFont(overlay.getLabelFont());
+		selectable(overlay.isSelectable());
+		names = overlay.names;
 	}
 
 	/**
@@ -66,16 +161,144 @@ public class LazyOverlay extends ij.gui.Overlay {
 	 * @return true if the ROIs have been downloaded, false otherwise.
 	 */
 	public boolean areROIsLoaded() {
-		return roisLoaded;
+		return status.get().state == State.LOADED;
 	}
 
 	/**
 	 * If the ROIs have not already been downloaded, this downloads the ROIs from
-	 * the OMERO server.
+	 * the OMERO server. If another thread is already loading them, this waits
+	 * for it to finish.
+	 *
+	 * @throws CancellationException if loading was cancelled, see
+	 *           {@link #cancelLoading()}
 	 */
 	public void loadROIs() {
-		if (roisLoaded) return;
-		loadROIsAndAddToOverlay();
+		while (true) {
+			final Status current = status.get();
+			switch (current.state) {
+				case LOADED:
+					return;
+				case LOADING:
+				case PARTIAL:
+					current.await();
+					if (current.progress.isCancelled()) throw new CancellationException(
+						"Loading the ROIs was cancelled");
+					// NB: Check again, the load may have failed
+					break;
+				default:
+					final Status loading = startLoading(current);
+					if (loading == null) break;
+					try {
+						final Load load = prepare(loading);
+						add(loading, load, convert(loading, load, 0, load.shapes.size()),
+							true);
+					}
+					catch (final CancellationException exc) {
+						loading.progress.cancel();
+						abort(Status.UNLOADED);
+						throw exc;
+					}
+					catch (final RuntimeException | Error exc) {
+						abort(Status.FAILED);
+						throw exc;
+					}
+					finally {
+						loading.done.countDown();
+					}
+					return;
+			}
+		}
+	}
+
+	/**
+	 * Loads the ROIs on the current plane of the given image first, and the
+	 * remaining ROIs in the background. The image is redrawn as ROIs are added.
+	 *
+	 * @see #loadROIs(int, int, int)
+	 */
+	public void loadROIs(final ImagePlus imp) {
+		loadROIs(imp.getC(), imp.getZ(), imp.getT(), imp::draw);
+	}
+
+	/**
+	 * Loads the ROIs on the given plane, and returns once they have been added
+	 * to this overlay. The remaining ROIs are then loaded in a background
+	 * thread, in order of their distance from the given plane, and added as
+	 * they are converted.
+	 * <p>
+	 * If the ROIs are already loaded, or being loaded, this does nothing.
+	 * </p>
+	 *
+	 * @param c channel, 1-based
+	 * @param z slice, 1-based
+	 * @param t frame, 1-based
+	 * @throws CancellationException if loading was cancelled before the ROIs
+	 *           of the given plane were added
+	 */
+	public void loadROIs(final int c, final int z, final int t) {
+		loadROIs(c, z, t, null);
+	}
+
+	/**
+	 * Stops loading the ROIs, if they are being loaded. The thread loading them
+	 * discards the ROIs converted so far, and it and all threads waiting for it
+	 * throw a {@link CancellationException}. The overlay stays unloaded, so the
+	 * ROIs can be requested again later.
+	 *
+	 * @return true if a load was in progress, false otherwise
+	 */
+	public boolean cancelLoading() {
+		final Status current = status.get();
+		if (current.progress == null) return false;
+		current.progress.cancel();
+		return true;
+	}
+
+	/**
+	 * Returns the progress of loading the ROIs, or {@code null} if they are not
+	 * being loaded.
+	 */
+	public LoadProgress getLoadProgress() {
+		final Status current = status.get();
+		return current.progress;
+	}
+
+	/**
+	 * Returns the number of ROIs in this overlay, without converting them.
+	 * <p>
+	 * Once the ROIs are loaded this is the exact number of ROIs. Before that it
+	 * is counted from the shapes of the {@link LazyROITree}, skipping those
+	 * known to be cropped away. This downloads the tree if needed, but does not
+	 * convert any shape. If recorded operations may still remove ROIs (see
+	 * {@link #hasDeferredOperations()}), this is an upper bound.
+	 * </p>
+	 *
+	 * @return the number of ROIs
+	 */
+	public int getROICount() {
+		final Status current = status.get();
+		if (current.state == State.LOADED) return super.size();
+		if (current.progress != null && current.progress.total() >= 0)
+			return current.progress.total();
+		final List<Predicate<ShapeData>> snapshot;
+		synchronized (this) {
+			snapshot = new ArrayList<>(filters);
+		}
+		int count = 0;
+		for (final TreeNode<?> child : source.children())
+			count += countShapes(child, snapshot);
+		return count;
+	}
+
+	/**
+	 * Check if operations which change the ROIs have been recorded, and not
+	 * applied yet because the ROIs have not been loaded. If so, the
+	 * {@link #getSource() source} does not reflect the ROIs of this overlay.
+	 *
+	 * @return true if there are recorded operations, false otherwise
+	 */
+	public synchronized boolean hasDeferredOperations() {
+		return !areROIsLoaded() && (!filters.isEmpty() || !operations.isEmpty());
 	}
 
 	/**
@@ -89,61 +312,87 @@ public class LazyOverlay extends ij.gui.Overlay {
 
 	@Override
 	public void add(final Roi roi) {
-		if (!roisLoaded) loadROIs();
+		if (!areROIsLoaded()) loadROIs();
 		super.add(roi);
 	}
 
 	@Override
 	public void add(final Roi roi, final String name) {
-		if (!roisLoaded) loadROIs();
+		if (!areROIsLoaded()) loadROIs();
 		super.add(roi, name);
 	}
 
 	@Override
 	public void addElement(final Roi roi) {
-		if (!roisLoaded) loadROIs();
+		if (!areROIsLoaded()) loadROIs();
 		super.addElement(roi);
 	}
 
 	@Override
 	public void remove(final int index) {
-		if (!roisLoaded) loadROIs();
+		if (!areROIsLoaded()) loadROIs();
+		release(super.get(index));
 		super.remove(index);
 	}
 
 	@Override
 	public void remove(final Roi roi) {
-		if (!roisLoaded) loadROIs();
+		if (!areROIsLoaded()) loadROIs();
+		if (super.contains(roi)) release(roi);
 		super.remove(roi);
 	}
 
 	@Override
 	public void remove(final String name) {
-		if (!roisLoaded) loadROIs();
+		if (!areROIsLoaded()) loadROIs();
+		final int index = super.getIndex(name);
+		if (index >= 0) release(super.get(index));
 		super.remove(name);
 	}
 
+	@Override
+	public void set(final Roi roi, final int index) {
+		if (!areROIsLoaded()) loadROIs();
+		release(super.get(index));
+		super.set(roi, index);
+	}
+
 	@Override
 	public void clear() {
-		if (!roisLoaded) loadROIs();
+		if (!areROIsLoaded()) loadROIs();
+		for (final Roi roi : super.toArray())
+			release(roi);
 		super.clear();
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * While the ROIs load in the background, ROIs may be discarded or cropped
+	 * away between a call to {@link #size()} and this one. This then returns
+	 * {@code null} for indices which are no longer valid, rather than throwing.
+	 * </p>
+	 */
 	@Override
 	public Roi get(final int index) {
-		if (!roisLoaded) loadROIs();
-		return super.get(index);
+		if (areROIsLoaded()) return unshared(index);
+		synchronized (this) {
+			if (areROIsAvailable()) return index < super.size() ? unshared(index)
+				: null;
+		}
+		loadROIs();
+		return unshared(index);
 	}
 
 	@Override
 	public int getIndex(final String name) {
-		if (!roisLoaded) loadROIs();
+		if (!areROIsLoaded()) loadROIs();
 		return super.getIndex(name);
 	}
 
 	@Override
 	public boolean contains(final Roi roi) {
-		if (!roisLoaded) loadROIs();
+		if (!areROIsLoaded()) loadROIs();
 		return super.contains(roi);
 	}
 
@@ -151,112 +400,567 @@ public class LazyOverlay extends ij.gui.Overlay {
 	 * {@inheritDoc}
 	 * <p>
 	 * This returns -1 if the ROIs have not been downloaded from the OMERO server
-	 * yet.
+	 * yet, see {@link #getROICount()} for a count which does not require them.
+	 * While the ROIs are loaded in the background, this is the number of ROIs
+	 * loaded so far.
 	 * </p>
 	 */
 	@Override
 	public int size() {
 		// Only state the number of ROIs when they've been loaded
 		// NB: Prevent ROIs from being loading during Dataset/ImagePlus conversions
-		if (!roisLoaded) return -1;
+		if (!areROIsAvailable()) return -1;
 		return super.size();
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * If the ROIs are being loaded in the background, this waits for all of
+	 * them, so the result is never a partial subset.
+	 * </p>
+	 */
 	@Override
 	public Roi[] toArray() {
-		if (!roisLoaded) loadROIs();
-		return super.toArray();
+		if (!areROIsLoaded()) loadROIs();
+		if (shared == null) return super.toArray();
+		synchronized (this) {
+			unshareAll();
+			return super.toArray();
+		}
 	}
 
 	@Override
-	public void setStrokeColor(final Color color) {
-		if (!roisLoaded) loadROIs();
-		super.setStrokeColor(color);
+	public synchronized void setStrokeColor(final Color color) {
+		if (!areROIsLoaded()) defer(overlay -> overlay.setStrokeColor(color));
+		else {
+			unshareAll();
+			super.setStrokeColor(color);
+		}
 	}
 
 	@Override
-	public void setFillColor(final Color color) {
-		if (!roisLoaded) loadROIs();
-		super.setFillColor(color);
+	public synchronized void setFillColor(final Color color) {
+		if (!areROIsLoaded()) defer(overlay -> overlay.setFillColor(color));
+		else {
+			unshareAll();
+			super.setFillColor(color);
+		}
 	}
 
 	@Override
-	public void translate(final int dx, final int dy) {
-		if (!roisLoaded) loadROIs();
-		super.translate(dx, dy);
+	public synchronized void translate(final int dx, final int dy) {
+		if (!areROIsLoaded()) defer(overlay -> overlay.translate(dx, dy));
+		else {
+			unshareAll();
+			super.translate(dx, dy);
+		}
 	}
 
 	@Override
-	public void translate(final double dx, final double dy) {
-		if (!roisLoaded) loadROIs();
-		super.translate(dx, dy);
+	public synchronized void translate(final double dx, final double dy) {
+		if (!areROIsLoaded()) defer(overlay -> overlay.translate(dx, dy));
+		else {
+			unshareAll();
+			super.translate(dx, dy);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * If the ROIs have not been loaded, this loads the ROIs of the given plane
+	 * first and the remaining ROIs in the background, see
+	 * {@link #loadROIs(int, int, int)}.
+	 * </p>
+	 */
+	@Override
+	public List<Roi> getROIs(final int c, final int z, final int t) {
+		if (!areROIsAvailable()) loadROIs(c, z, t);
+		final List<Roi> rois = super.getROIs(c, z, t);
+		if (shared == null || !areROIsLoaded()) return rois;
+		synchronized (this) {
+			for (int i = 0; i < rois.size(); i++) {
+				if (isShared(rois.get(i))) rois.set(i, unshare(super.indexOf(rois.get(
+					i))));
+			}
+		}
+		return rois;
 	}
 
 	@Override
 	public ResultsTable measure(final ImagePlus imp) {
-		if (!roisLoaded) loadROIs();
+		if (!areROIsLoaded()) loadROIs();
 		return super.measure(imp);
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * If the ROIs have not been loaded, this returns a new {@link LazyOverlay}
+	 * which only loads the ROIs which may intersect the bounds.
+	 * </p>
+	 */
 	@Override
 	public Overlay crop(final Rectangle bounds) {
-		if (!roisLoaded) loadROIs();
+		if (bounds == null) {
+			loadROIs();
+			return super.crop(bounds);
+		}
+		synchronized (this) {
+			if (!areROIsLoaded()) {
+				final LazyOverlay cropped = new LazyOverlay(this);
+				// NB: ImageJ ROI bounds are integer, so shapes close to the bounds
+				// may still intersect them once converted
+				cropped.filters.add(shape -> ShapeBounds.mayIntersect(shape, bounds,
+					BOUNDS_MARGIN));
+				cropped.operations.add(roi -> {
+					final Overlay single = new Overlay(roi).crop(bounds);
+					return single.size() == 0 ? null : single.get(0);
+				});
+				return cropped;
+			}
+		}
 		return super.crop(bounds);
 	}
 
 	@Override
-	public void crop(final int firstSlice, final int lastSlice) {
-		if (!roisLoaded) loadROIs();
-		super.crop(firstSlice, lastSlice);
+	public synchronized void crop(final int firstSlice, final int lastSlice) {
+		if (areROIsLoaded()) {
+			unshareAll();
+			super.crop(firstSlice, lastSlice);
+			return;
+		}
+		// NB: OMERO shapes have a hyperstack position, so which of them are
+		// cropped by stack position is only known once they are converted
+		defer(overlay -> overlay.crop(firstSlice, lastSlice));
 	}
 
 	@Override
-	public void crop(final int firstC, final int lastC, final int firstZ,
-		final int lastZ, final int firstT, final int lastT)
+	public synchronized void crop(final int firstC, final int lastC,
+		final int firstZ, final int lastZ, final int firstT, final int lastT)
 	{
-		if (!roisLoaded) loadROIs();
-		super.crop(firstC, lastC, firstZ, lastZ, firstT, lastT);
+		if (areROIsLoaded()) {
+			unshareAll();
+			super.crop(firstC, lastC, firstZ, lastZ, firstT, lastT);
+			return;
+		}
+		filters.add(shape -> inRange(shape.getC(), firstC, lastC) && inRange(shape
+			.getZ(), firstZ, lastZ) && inRange(shape.getT(), firstT, lastT));
+		defer(overlay -> overlay.crop(firstC, lastC, firstZ, lastZ, firstT,
+			lastT));
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The duplicate is a {@link LazyOverlay} sharing the source of this
+	 * overlay. If the ROIs have been loaded, they are shared copy-on-write
+	 * rather than cloned.
+	 * </p>
+	 */
 	@Override
-	public Overlay duplicate() {
-		if (!roisLoaded) loadROIs();
-		return super.duplicate();
+	public synchronized Overlay duplicate() {
+		final LazyOverlay copy = new LazyOverlay(this);
+		if (!areROIsLoaded()) return copy;
+
+		copy.status.set(Status.LOADED);
+		copy.drawNames(getDrawNames());
+		if (shared == null) shared = new IdentityHashMap<>();
+		copy.shared = shared;
+		synchronized (shared) {
+			for (final Roi roi : super.toArray()) {
+				final int[] holders = shared.get(roi);
+				if (holders == null) shared.put(roi, new int[] { 2 });
+				else holders[0]++;
+				copy.add(roi);
+			}
+		}
+		return copy;
 	}
 
 	@Override
 	public String toString() {
-		if (!roisLoaded) loadROIs();
+		if (!areROIsLoaded()) loadROIs();
 		return super.toString();
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * If the ROIs have not been loaded, the setting is recorded and applied to
+	 * each ROI as it is converted.
+	 * </p>
+	 */
 	@Override
-	public void drawNames(final boolean b) {
-		// NB: If the ROIs aren't loaded there's nothing to draw names on
-		if (!roisLoaded) return;
+	public synchronized void drawNames(final boolean b) {
+		names = b;
+		if (!areROIsLoaded()) return;
+		unshareAll();
 		super.drawNames(b);
 	}
 
+	@Override
+	public boolean getDrawNames() {
+		return names;
+	}
+
 	// -- Helper methods --
 
-	private synchronized void loadROIsAndAddToOverlay() {
-		if (roisLoaded) return;
-		final List<TreeNode<?>> children = source.children();
-		for (final TreeNode<?> child : children)
-			addROIs(child);
-		roisLoaded = true;
+	/**
+	 * Records an operation, which is applied to each ROI once it is converted.
+	 * The operation is applied to an overlay containing only that ROI, so it
+	 * behaves exactly as it would on the loaded overlay.
+	 */
+	private void defer(final Consumer<Overlay> operation) {
+		final UnaryOperator<Roi> op = roi -> {
+			final Overlay single = new Overlay(roi);
+			operation.accept(single);
+			return single.size() == 0 ? null : single.get(0);
+		};
+		operations.add(op);
+		if (status.get().state != State.PARTIAL) return;
+		// NB: Apply it to the ROIs loaded so far as well
+		for (int i = super.size() - 1; i >= 0; i--) {
+			final Roi roi = super.get(i);
+			final Roi result = op.apply(roi);
+			if (result == null) super.remove(i);
+			else if (result != roi) super.set(result, i);
+		}
+	}
+
+	/**
+	 * Checks if the ROIs can be read without waiting, which is the case once
+	 * they are loaded, or while the remaining ROIs load in the background.
+	 */
+	private boolean areROIsAvailable() {
+		final State state = status.get().state;
+		return state == State.LOADED || state == State.PARTIAL;
+	}
+
+	private void loadROIs(final int c, final int z, final int t,
+		final Runnable repaint)
+	{
+		final Status current = status.get();
+		if (current.state != State.UNLOADED && current.state != State.FAILED)
+			return;
+		final Status loading = startLoading(current);
+		if (loading == null) return;
+
+		final Load load;
+		final int first;
+		try {
+			load = prepare(loading);
+			// NB: The sort is stable, so ROIs at the same distance stay in order
+			load.shapes.sort(Comparator.comparingInt(dn -> distance(dn, c, z, t)));
+			int onPlane = 0;
+			while (onPlane < load.shapes.size() && distance(load.shapes.get(
+				onPlane), c, z, t) == 0)
+				onPlane++;
+			first = onPlane;
+			add(loading, load, convert(loading, load, 0, first), first == load.shapes
+				.size());
+		}
+		catch (final CancellationException exc) {
+			loading.progress.cancel();
+			abort(Status.UNLOADED);
+			loading.done.countDown();
+			throw exc;
+		}
+		catch (final RuntimeException | Error exc) {
+			abort(Status.FAILED);
+			loading.done.countDown();
+			throw exc;
+		}
+		if (repaint != null) repaint.run();
+		if (areROIsLoaded()) {
+			loading.done.countDown();
+			return;
+		}
+		LOADER.execute(() -> loadRemaining(loading, load, first, repaint));
+	}
+
+	private void loadRemaining(final Status loading, final Load load,
+		final int from, final Runnable repaint)
+	{
+		try {
+			final int size = load.shapes.size();
+			for (int i = from; i < size; i += BATCH_SIZE) {
+				final int to = Math.min(size, i + BATCH_SIZE);
+				add(loading, load, convert(loading, load, i, to), to == size);
+				if (repaint != null) repaint.run();
+			}
+		}
+		catch (final CancellationException exc) {
+			loading.progress.cancel();
+			abort(Status.UNLOADED);
+			if (repaint != null) repaint.run();
+		}
+		catch (final RuntimeException | Error exc) {
+			abort(Status.FAILED);
+			if (repaint != null) repaint.run();
+			throw exc;
+		}
+		finally {
+			loading.done.countDown();
+		}
 	}
 
-	private void addROIs(final TreeNode<?> dn) {
-		if (dn.data() instanceof MaskPredicate) {
-			final Roi ijRoi = convert.convert(dn.data(), Roi.class);
+	/**
+	 * Moves the status from the given one to {@link State#LOADING}.
+	 *
+	 * @return the new status, or {@code null} if another thread changed the
+	 *         status first
+	 */
+	private Status startLoading(final Status current) {
+		final Status loading = new Status(State.LOADING, new LoadProgress(
+			statusService(), "Loading ROIs", -1));
+		return status.compareAndSet(current, loading) ? loading : null;
+	}
+
+	/** Snapshots the recorded operations, and lists the shapes to convert. */
+	private Load prepare(final Status loading) {
+		final Load load;
+		synchronized (this) {
+			load = new Load(new ArrayList<>(filters), new ArrayList<>(operations));
+		}
+		for (final TreeNode<?> child : source.children())
+			collectShapes(child, load);
+		loading.progress.setTotal(load.shapes.size());
+		return load;
+	}
+
+	/** Converts the shapes in the given range, applying the operations. */
+	private List<Roi> convert(final Status loading, final Load load,
+		final int from, final int to)
+	{
+		final List<Roi> rois = new ArrayList<>(to - from);
+		for (int i = from; i < to; i++) {
+			loading.progress.step();
+			final Object data = load.shapes.get(i).data();
+			Roi ijRoi = convert.convert(data, Roi.class);
 			if (ijRoi == null) throw new IllegalArgumentException("Cannot convert " +
-				dn.data() + " to ij.gui.Roi");
-			super.add(ijRoi);
+				data + " to ij.gui.Roi");
+			for (int o = 0; o < load.operations.size() && ijRoi != null; o++)
+				ijRoi = load.operations.get(o).apply(ijRoi);
+			if (ijRoi != null) rois.add(ijRoi);
+		}
+		return rois;
+	}
+
+	/**
+	 * Adds converted ROIs to this overlay. Once the last ROIs are added, the
+	 * overlay is marked loaded; until then it is partially filled.
+	 */
+	private synchronized void add(final Status loading, final Load load,
+		final List<Roi> rois, final boolean last)
+	{
+		// NB: Apply the operations recorded while converting
+		for (int i = load.operations.size(); i < operations.size(); i++) {
+			final UnaryOperator<Roi> operation = operations.get(i);
+			rois.replaceAll(roi -> roi == null ? null : operation.apply(roi));
+		}
+		rois.removeIf(roi -> roi == null);
+		for (final Roi roi : rois) {
+			// NB: Names are drawn outside of the ROI bounds
+			if (names) roi.setIgnoreClipRect(true);
+			super.add(roi);
+		}
+		if (last) {
+			filters.clear();
+			operations.clear();
+			loading.progress.done();
+			status.set(Status.LOADED);
+			if (names) super.drawNames(true);
+		}
+		else if (status.get().state == State.LOADING) status.set(loading.partial());
+	}
+
+	/**
+	 * Discards the ROIs loaded so far, and sets the given status. Threads
+	 * waiting for a failed load try again, so the progress is only cancelled by
+	 * the callers handling a cancellation.
+	 */
+	private synchronized void abort(final Status failed) {
+		super.clear();
+		status.set(failed);
+	}
+
+	/**
+	 * Returns the ROI at the given index, after replacing it with a clone if it
+	 * is shared with another overlay.
+	 */
+	private Roi unshare(final int index) {
+		final Roi roi = super.get(index);
+		if (shared == null) return roi;
+		final Roi clone;
+		synchronized (shared) {
+			if (!shared.containsKey(roi)) return roi;
+			release(roi);
+			clone = (Roi) roi.clone();
+		}
+		super.set(clone, index);
+		return clone;
+	}
+
+	/** Same as {@link #unshare}, only locking if ROIs are shared at all. */
+	private Roi unshared(final int index) {
+		if (shared == null) return super.get(index);
+		synchronized (this) {
+			return unshare(index);
+		}
+	}
+
+	private boolean isShared(final Roi roi) {
+		synchronized (shared) {
+			return shared.containsKey(roi);
 		}
+	}
+
+	private void unshareAll() {
+		if (shared == null) return;
+		for (int i = 0; i < super.size(); i++)
+			unshare(i);
+	}
+
+	/** Stops sharing the given ROI on behalf of this overlay. */
+	private void release(final Roi roi) {
+		if (shared == null) return;
+		synchronized (shared) {
+			final int[] holders = shared.get(roi);
+			if (holders != null && --holders[0] <= 1) shared.remove(roi);
+		}
+	}
+
+	private StatusService statusService() {
+		final Context context = convert == null ? null : convert.getContext();
+		return context == null ? null : context.getService(StatusService.class);
+	}
+
+	/** Counts the shapes {@link #collectShapes} would collect. */
+	private static int countShapes(final TreeNode<?> dn,
+		final List<Predicate<ShapeData>> filters)
+	{
+		if (dn.data() instanceof OMERORealMask && !accept(((OMERORealMask<?>) dn
+			.data()).getShape(), filters)) return 0;
+		int count = dn.data() instanceof MaskPredicate ? 1 : 0;
+		if (dn.children() == null) return count;
+		for (final TreeNode<?> child : dn.children())
+			count += countShapes(child, filters);
+		return count;
+	}
+
+	private static boolean accept(final ShapeData shape,
+		final List<Predicate<ShapeData>> filters)
+	{
+		for (final Predicate<ShapeData> filter : filters)
+			if (!filter.test(shape)) return false;
+		return true;
+	}
+
+	/**
+	 * Checks if a 0-based OMERO plane index is within the given 1-based ImageJ
+	 * range. Shapes without an index are on all planes.
+	 */
+	private static boolean inRange(final int index, final int first,
+		final int last)
+	{
+		return index < 0 || index + 1 >= first && index + 1 <= last;
+	}
+
+	private static void collectShapes(final TreeNode<?> dn, final Load load) {
+		if (dn.data() instanceof OMERORealMask && !accept(((OMERORealMask<?>) dn
+			.data()).getShape(), load.filters)) return;
+		if (dn.data() instanceof MaskPredicate) load.shapes.add(dn);
 		if (dn.children() == null || dn.children().isEmpty()) return;
 		for (final TreeNode<?> child : dn.children())
-			addROIs(child);
+			collectShapes(child, load);
+	}
+
+	/**
+	 * Returns the number of planes between the given shape and the given
+	 * 1-based plane, summed over all dimensions.
+	 */
+	private static int distance(final TreeNode<?> dn, final int c, final int z,
+		final int t)
+	{
+		if (!(dn.data() instanceof OMERORealMask)) return 0;
+		final ShapeData shape = ((OMERORealMask<?>) dn.data()).getShape();
+		return distance(shape.getC(), c) + distance(shape.getZ(), z) + distance(
+			shape.getT(), t);
+	}
+
+	private static int distance(final int index, final int position) {
+		// NB: Shapes without an index are on all planes
+		return index < 0 ? 0 : Math.abs(index + 1 - position);
+	}
+
+	// -- Helper classes --
+
+	private enum State {
+		UNLOADED, LOADING, PARTIAL, LOADED, FAILED
+	}
+
+	/** The shapes to convert, and the operations recorded before listing them. */
+	private static final class Load {
+
+		private final List<Predicate<ShapeData>> filters;
+		private final List<UnaryOperator<Roi>> operations;
+		private final List<TreeNode<?>> shapes = new ArrayList<>();
+
+		private Load(final List<Predicate<ShapeData>> filters,
+			final List<UnaryOperator<Roi>> operations)
+		{
+			this.filters = filters;
+			this.operations = operations;
+		}
+	}
+
+	/**
+	 * A load state, with the latch threads waiting for a load park on and the
+	 * progress of the load.
+	 */
+	private static final class Status {
+
+		private static final Status UNLOADED = new Status(State.UNLOADED, null);
+		private static final Status LOADED = new Status(State.LOADED, null);
+		private static final Status FAILED = new Status(State.FAILED, null);
+
+		private final State state;
+		private final LoadProgress progress;
+		private final CountDownLatch done;
+
+		private Status(final State state, final LoadProgress progress) {
+			this(state, progress, new CountDownLatch(1));
+		}
+
+		private Status(final State state, final LoadProgress progress,
+			final CountDownLatch done)
+		{
+			this.state = state;
+			this.progress = progress;
+			this.done = done;
+		}
+
+		/** Returns the partially loaded state of this load. */
+		private Status partial() {
+			return new Status(State.PARTIAL, progress, done);
+		}
+
+		/** Waits for the load to finish, without giving up on interrupts. */
+		private void await() {
+			boolean interrupted = false;
+			while (true) {
+				try {
+					done.await();
+					break;
+				}
+				catch (final InterruptedException exc) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) Thread.currentThread().interrupt();
+		}
 	}
 
 }
@@ -136,7 +136,12 @@ public class LegacyOMEROROIService extends DefaultROIService {
 			for (int r = 0; r < newROIs.length; r++)
 				currentROIs.add(newROIs[r]);
 		}
-		else imp.setOverlay(overlay);
+		else {
+			imp.setOverlay(overlay);
+			// NB: Show the ROIs of the current plane without waiting for the rest
+			if (overlay instanceof LazyOverlay && imp.isVisible())
+				((LazyOverlay) overlay).loadROIs(imp);
+		}
 	}
 
 	private boolean hasROIs(final TreeNode<?> dn) {
@@ -0,0 +1,113 @@
+/*-
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2018 - 2023 Open Microscopy Environment:
+ * 	- Board of Regents of the University of Wisconsin-Madison
+ * 	- Glencoe Software, Inc.
+ * 	- University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package net.imagej.omero.legacy;
+
+import java.util.concurrent.CancellationException;
+
+import org.scijava.app.StatusService;
+
+/**
+ * Tracks the progress of converting a number of OMERO shapes to ImageJ 1.x
+ * ROIs. The progress is reported through a {@link StatusService}, if any, and
+ * the conversion can be cancelled cooperatively: either through
+ * {@link #cancel()} or by interrupting the converting thread.
+ */
+public class LoadProgress {
+
+	/** Number of shapes between two progress updates. */
+	private static final int REPORT_INTERVAL = 64;
+
+	private final StatusService status;
+	private final String message;
+	private volatile int total;
+	private int count;
+	private volatile boolean cancelled;
+
+	/**
+	 * @param status reports the progress, may be {@code null}
+	 * @param message the status message to show
+	 * @param total the total number of shapes, or -1 if unknown
+	 */
+	public LoadProgress(final StatusService status, final String message,
+		final int total)
+	{
+		this.status = status;
+		this.message = message;
+		this.total = total;
+	}
+
+	/**
+	 * Requests the conversion to stop, the next call to {@link #step()} throws
+	 * a {@link CancellationException}.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/** Returns the number of shapes converted so far. */
+	public int count() {
+		return count;
+	}
+
+	/** Returns the total number of shapes, or -1 if it is unknown. */
+	public int total() {
+		return total;
+	}
+
+	/** Sets the total number of shapes, once it is known. */
+	public void setTotal(final int total) {
+		this.total = total;
+	}
+
+	/**
+	 * Must be called before converting each shape. Checks for cancellation,
+	 * and reports the progress every so often.
+	 *
+	 * @throws CancellationException if the conversion was cancelled, or the
+	 *           current thread was interrupted
+	 */
+	public void step() {
+		// NB: Leave the interrupt flag set, for the caller to see
+		if (cancelled || Thread.currentThread().isInterrupted()) {
+			if (status != null) status.clearStatus();
+			throw new CancellationException(message + " was cancelled");
+		}
+		if (status != null && count % REPORT_INTERVAL == 0) {
+			if (total < 0) status.showStatus(message + " (" + count + ")");
+			else status.showStatus(count, total, message);
+		}
+		count++;
+	}
+
+	/** Reports that all shapes have been converted. */
+	public void done() {
+		if (status != null) status.clearStatus();
+	}
+}
@@ -0,0 +1,279 @@
+/*-
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2018 - 2023 Open Microscopy Environment:
+ * 	- Board of Regents of the University of Wisconsin-Madison
+ * 	- Glencoe Software, Inc.
+ * 	- University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package net.imagej.omero.legacy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ij.gui.Overlay;
+import ij.gui.Roi;
+
+/**
+ * An {@link Overlay} which indexes its ROIs by plane, so the ROIs of a single
+ * plane can be retrieved without testing the position of every ROI.
+ * <p>
+ * ROIs are bucketed by their (C, Z, T) position, where 0 means the ROI is on
+ * all planes of that dimension. ROIs which only have a stack position are
+ * bucketed by that position instead. The index is built on first lookup, and
+ * rebuilt after ROIs are added, removed or replaced through this overlay. A ROI
+ * does not report changes of its position though, so call
+ * {@link #invalidate()} after changing the position of a ROI which is already
+ * in this overlay.
+ * </p>
+ * <p>
+ * NB: ImageJ's {@link ij.gui.ImageCanvas} draws an overlay through
+ * {@link #size()} and {@link #get(int)}, testing the position of each ROI
+ * itself, so it does not benefit from the index. The lookups serve code which
+ * processes one plane at a time, and {@link LazyOverlay}, which loads the ROIs
+ * of the requested plane first.
+ * </p>
+ */
+public class PlaneOverlay extends Overlay {
+
+	private Index index;
+
+	/** Bumped by every change of this overlay, the index is built for one. */
+	private int modCount;
+
+	/**
+	 * Returns the ROIs on the given hyperstack plane, including ROIs which are
+	 * on all channels, slices or frames. The ROIs are in overlay order.
+	 *
+	 * @param c channel, 1-based
+	 * @param z slice, 1-based
+	 * @param t frame, 1-based
+	 */
+	public List<Roi> getROIs(final int c, final int z, final int t) {
+		return index().planes(c, z, t);
+	}
+
+	/**
+	 * Returns the ROIs at the given stack position, including ROIs which are on
+	 * all planes. The ROIs are in overlay order.
+	 *
+	 * @param position stack position, 1-based
+	 */
+	public List<Roi> getROIs(final int position) {
+		return index().position(position);
+	}
+
+	/**
+	 * Discards the plane index, it is rebuilt on the next lookup. This must be
+	 * called after changing the position of a ROI in this overlay.
+	 */
+	public synchronized void invalidate() {
+		modCount++;
+		index = null;
+	}
+
+	@Override
+	public void add(final Roi roi) {
+		super.add(roi);
+		invalidate();
+	}
+
+	@Override
+	public void add(final Roi roi, final String name) {
+		super.add(roi, name);
+		invalidate();
+	}
+
+	@Override
+	public void addElement(final Roi roi) {
+		super.addElement(roi);
+		invalidate();
+	}
+
+	@Override
+	public void remove(final int index) {
+		super.remove(index);
+		invalidate();
+	}
+
+	@Override
+	public void remove(final Roi roi) {
+		super.remove(roi);
+		invalidate();
+	}
+
+	@Override
+	public void remove(final String name) {
+		super.remove(name);
+		invalidate();
+	}
+
+	@Override
+	public void set(final Roi roi, final int index) {
+		super.set(roi, index);
+		invalidate();
+	}
+
+	@Override
+	public void clear() {
+		super.clear();
+		invalidate();
+	}
+
+	@Override
+	public void crop(final int firstSlice, final int lastSlice) {
+		super.crop(firstSlice, lastSlice);
+		invalidate();
+	}
+
+	@Override
+	public void crop(final int firstC, final int lastC, final int firstZ,
+		final int lastZ, final int firstT, final int lastT)
+	{
+		super.crop(firstC, lastC, firstZ, lastZ, firstT, lastT);
+		invalidate();
+	}
+
+	// -- Helper methods --
+
+	private Index index() {
+		Index current;
+		final int expected;
+		synchronized (this) {
+			current = index;
+			expected = modCount;
+		}
+		// NB: Overlay methods which are not overridden may still change its size
+		if (current != null && current.rois.length == overlaySize())
+			return current;
+		// NB: Read the ROIs as they are, subclasses may load or copy them in
+		// toArray()
+		current = new Index(super.toArray());
+		synchronized (this) {
+			// NB: Changes made while building are only covered by the next index
+			if (modCount == expected) index = current;
+		}
+		return current;
+	}
+
+	/** Returns the number of ROIs, bypassing subclasses. */
+	private int overlaySize() {
+		return super.size();
+	}
+
+	private static long key(final int c, final int z, final int t) {
+		return ((long) c << 42) | ((long) z << 21) | t;
+	}
+
+	// -- Helper classes --
+
+	/** Overlay indices of the ROIs, by plane. */
+	private static final class Index {
+
+		private static final int[] NONE = new int[0];
+
+		private final Roi[] rois;
+		private final Map<Long, int[]> planes = new HashMap<>();
+		private final Map<Integer, int[]> positions = new HashMap<>();
+
+		private Index(final Roi[] rois) {
+			this.rois = rois;
+			final long[] keys = new long[rois.length];
+			final Map<Long, List<Integer>> planeLists = new HashMap<>();
+			final Map<Integer, List<Integer>> positionLists = new HashMap<>();
+			for (int i = 0; i < rois.length; i++) {
+				keys[i] = key(rois[i]);
+				if (keys[i] < 0) positionLists.computeIfAbsent((int) -keys[i],
+					k -> new ArrayList<>()).add(i);
+				else planeLists.computeIfAbsent(keys[i], k -> new ArrayList<>()).add(
+					i);
+			}
+			for (final Map.Entry<Long, List<Integer>> e : planeLists.entrySet())
+				planes.put(e.getKey(), toArray(e.getValue()));
+			for (final Map.Entry<Integer, List<Integer>> e : positionLists
+				.entrySet())
+				positions.put(e.getKey(), toArray(e.getValue()));
+		}
+
+		/** Returns the ROIs on the given plane. */
+		private List<Roi> planes(final int c, final int z, final int t) {
+			final int[] cs = c == 0 ? new int[] { 0 } : new int[] { c, 0 };
+			final int[] zs = z == 0 ? new int[] { 0 } : new int[] { z, 0 };
+			final int[] ts = t == 0 ? new int[] { 0 } : new int[] { t, 0 };
+			final List<int[]> buckets = new ArrayList<>(8);
+			for (final int cc : cs)
+				for (final int zz : zs)
+					for (final int tt : ts)
+						buckets.add(planes.getOrDefault(key(cc, zz, tt), NONE));
+			return rois(merge(buckets));
+		}
+
+		/** Same as {@link #planes}, for the given stack position. */
+		private List<Roi> position(final int position) {
+			return rois(merge(Arrays.asList(positions.getOrDefault(position, NONE),
+				planes.getOrDefault(key(0, 0, 0), NONE))));
+		}
+
+		private List<Roi> rois(final int[] indices) {
+			final List<Roi> result = new ArrayList<>(indices.length);
+			for (final int i : indices)
+				result.add(rois[i]);
+			return result;
+		}
+
+		/**
+		 * Returns the bucket key of the given ROI. ROIs which only have a stack
+		 * position have a negative key.
+		 */
+		private static long key(final Roi roi) {
+			final int c = roi.getCPosition();
+			final int z = roi.getZPosition();
+			final int t = roi.getTPosition();
+			if (c == 0 && z == 0 && t == 0 && roi.getPosition() != 0) return -roi
+				.getPosition();
+			return PlaneOverlay.key(c, z, t);
+		}
+
+		private static int[] merge(final List<int[]> buckets) {
+			int size = 0;
+			for (final int[] bucket : buckets)
+				size += bucket.length;
+			final int[] merged = new int[size];
+			int offset = 0;
+			for (final int[] bucket : buckets) {
+				System.arraycopy(bucket, 0, merged, offset, bucket.length);
+				offset += bucket.length;
+			}
+			// NB: Keep the overlay order, so ROIs are drawn as they are stacked
+			Arrays.sort(merged);
+			return merged;
+		}
+
+		private static int[] toArray(final List<Integer> list) {
+			final int[] array = new int[list.size()];
+			for (int i = 0; i < array.length; i++)
+				array[i] = list.get(i);
+			return array;
+		}
+	}
+}
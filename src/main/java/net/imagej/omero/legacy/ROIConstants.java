@@ -32,4 +32,19 @@ public class ROIConstants {
 	
 	public static final String OUTPUT_CACHE_KEY = "outputROIs";
 
+	/**
+	 * {@link ij.Prefs} key, if true freehand polylines are uploaded as
+	 * polylines rather than rasterized into masks.
+	 */
+	public static final String POLYLINE_AS_VECTOR_PREF =
+		"omero.roi.polylineAsVector";
+
+	/**
+	 * {@link ij.Prefs} key for the tolerance, in pixels, polygons and
+	 * polylines are simplified with before they are uploaded. Simplification
+	 * is off if the tolerance is not positive, which is the default.
+	 */
+	public static final String SIMPLIFY_TOLERANCE_PREF =
+		"omero.roi.simplifyTolerance";
+
 }
@@ -0,0 +1,122 @@
+/*-
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2018 - 2023 Open Microscopy Environment:
+ * 	- Board of Regents of the University of Wisconsin-Madison
+ * 	- Glencoe Software, Inc.
+ * 	- University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package net.imagej.omero.legacy;
+
+import java.awt.geom.Rectangle2D;
+
+import net.imagej.omero.legacy.polyshape.Polyshapes;
+
+import ome.model.units.BigResult;
+import omero.gateway.model.EllipseData;
+import omero.gateway.model.LineData;
+import omero.gateway.model.MaskData;
+import omero.gateway.model.PointData;
+import omero.gateway.model.PolygonData;
+import omero.gateway.model.PolylineData;
+import omero.gateway.model.RectangleData;
+import omero.gateway.model.ShapeData;
+import omero.model.Length;
+import omero.model.Shape;
+import omero.model.enums.UnitsLength;
+
+/**
+ * Computes the bounds of OMERO shapes from their geometry, without converting
+ * them to ImageJ ROIs.
+ */
+final class ShapeBounds {
+
+	private ShapeBounds() {
+		// NB: prevent instantiation of utility class
+	}
+
+	/**
+	 * Returns the bounds of the given shape, or {@code null} if they are not
+	 * known (e.g. for text and transformed shapes).
+	 */
+	static Rectangle2D get(final ShapeData shape) {
+		if (((Shape) shape.asIObject()).getTransform() != null) return null;
+		if (shape instanceof RectangleData) {
+			final RectangleData r = (RectangleData) shape;
+			return new Rectangle2D.Double(r.getX(), r.getY(), r.getWidth(), r
+				.getHeight());
+		}
+		if (shape instanceof EllipseData) {
+			final EllipseData e = (EllipseData) shape;
+			return new Rectangle2D.Double(e.getX() - e.getRadiusX(), e.getY() - e
+				.getRadiusY(), 2 * e.getRadiusX(), 2 * e.getRadiusY());
+		}
+		if (shape instanceof LineData) {
+			final LineData l = (LineData) shape;
+			return new Rectangle2D.Double(Math.min(l.getX1(), l.getX2()), Math.min(l
+				.getY1(), l.getY2()), Math.abs(l.getX2() - l.getX1()), Math.abs(l
+					.getY2() - l.getY1()));
+		}
+		if (shape instanceof PointData) {
+			final PointData p = (PointData) shape;
+			return new Rectangle2D.Double(p.getX(), p.getY(), 0, 0);
+		}
+		if (shape instanceof PolygonData) return Polyshapes.getPoints(
+			(PolygonData) shape).getFloatBounds();
+		if (shape instanceof PolylineData) return Polyshapes.getPoints(
+			(PolylineData) shape).getFloatBounds();
+		if (shape instanceof MaskData) {
+			final MaskData m = (MaskData) shape;
+			return new Rectangle2D.Double(m.getX(), m.getY(), m.getWidth(), m
+				.getHeight());
+		}
+		return null;
+	}
+
+	/**
+	 * Returns false if the given shape is known to be further than
+	 * {@code margin} from the given bounds. The margin is widened by half the
+	 * stroke width of the shape, which is drawn centered on its outline.
+	 */
+	static boolean mayIntersect(final ShapeData shape,
+		final Rectangle2D bounds, final double margin)
+	{
+		final Rectangle2D b = get(shape);
+		if (b == null) return true;
+		final double m = margin + strokeWidth(shape) / 2;
+		return b.getMaxX() + m >= bounds.getMinX() && b.getMinX() - m <= bounds
+			.getMaxX() && b.getMaxY() + m >= bounds.getMinY() && b.getMinY() -
+				m <= bounds.getMaxY();
+	}
+
+	// -- Helper methods --
+
+	/** Returns the stroke width of the given shape in pixels, or 0 if unset. */
+	private static double strokeWidth(final ShapeData shape) {
+		try {
+			final Length width = shape.getShapeSettings().getStrokeWidth(
+				UnitsLength.PIXEL);
+			return width == null ? 0 : Math.max(0, width.getValue());
+		}
+		catch (final BigResult exc) {
+			return 0;
+		}
+	}
+}
@@ -25,7 +25,22 @@
 
 package net.imagej.omero.legacy.convert;
 
+import java.awt.BasicStroke;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import ij.Prefs;
+import ij.gui.PolygonRoi;
 import ij.gui.Roi;
+import ij.gui.ShapeRoi;
+import ij.process.FloatPolygon;
+import ij.process.ImageProcessor;
 
 import net.imagej.legacy.convert.roi.DefaultRoiWrapper;
 import net.imagej.legacy.convert.roi.IJRoiWrapper;
@@ -37,16 +52,17 @@ import net.imagej.legacy.convert.roi.polygon2d.PolygonRoiWrapper;
 import net.imagej.legacy.convert.roi.polyline.IrregularPolylineRoiWrapper;
 import net.imagej.legacy.convert.roi.polyline.PolylineRoiWrapper;
 import net.imagej.legacy.convert.roi.polyline.UnmodifiablePolylineRoiWrapper;
+import net.imagej.omero.legacy.ROIConstants;
+import net.imagej.omero.legacy.mask.ShapeRasterizer;
+import net.imagej.omero.legacy.polyshape.Polyshapes;
 import net.imagej.omero.legacy.text.TextRoiWrapper;
 import net.imagej.omero.roi.ellipse.ImageJToOMEROEllipse;
 import net.imagej.omero.roi.line.ImageJToOMEROLine;
-import net.imagej.omero.roi.mask.MaskIntervalToMaskData;
-import net.imagej.omero.roi.mask.RealMaskRealIntervalToMaskData;
 import net.imagej.omero.roi.polyshape.ImageJToOMEROPolygon;
 import net.imagej.omero.roi.polyshape.ImageJToOMEROPolyline;
 import net.imagej.omero.roi.rectangle.ImageJToOMERORectangle;
+import net.imglib2.roi.BoundaryType;
 
-import ome.formats.model.UnitsFactory;
 import omero.gateway.model.EllipseData;
 import omero.gateway.model.LineData;
 import omero.gateway.model.MaskData;
@@ -55,11 +71,11 @@ import omero.gateway.model.PolylineData;
 import omero.gateway.model.RectangleData;
 import omero.gateway.model.ShapeData;
 import omero.gateway.model.TextData;
-import omero.model.LengthI;
 import omero.model.Shape;
 
 import org.scijava.Priority;
 import org.scijava.convert.AbstractConverter;
+import org.scijava.convert.ConversionRequest;
 import org.scijava.convert.ConvertService;
 import org.scijava.convert.Converter;
 import org.scijava.plugin.Parameter;
@@ -73,6 +89,10 @@ import org.scijava.plugin.Plugin;
  */
 public class IJRoiWrapperToShapeData {
 
+	/** Boundary type markers, by converter and boundary type. */
+	private static final Map<String, String> MARKERS =
+		new ConcurrentHashMap<>();
+
 	/**
 	 * Abstract base class for converting {@link IJRoiWrapper} to
 	 * {@link ShapeData}
@@ -94,18 +114,18 @@ public class IJRoiWrapperToShapeData {
 			final Shape shapeI = (Shape) shape.asIObject();
 			final Roi roi = ((I) src).getRoi();
 
-			if (roi.getZPosition() != 0) shapeI.setTheZ(omero.rtypes.rint(roi
+			if (roi.getZPosition() != 0) shapeI.setTheZ(StyleCache.rint(roi
 				.getZPosition() - 1));
-			if (roi.getTPosition() != 0) shapeI.setTheT(omero.rtypes.rint(roi
+			if (roi.getTPosition() != 0) shapeI.setTheT(StyleCache.rint(roi
 				.getTPosition() - 1));
-			if (roi.getCPosition() != 0) shapeI.setTheC(omero.rtypes.rint(roi
+			if (roi.getCPosition() != 0) shapeI.setTheC(StyleCache.rint(roi
 				.getCPosition() - 1));
 
 			if (roi.getStrokeWidth() > 0) shape.getShapeSettings().setStrokeWidth(
-				new LengthI(roi.getStrokeWidth(), UnitsFactory.Shape_StrokeWidth));
-			if (roi.getStrokeColor() != null) shape.getShapeSettings().setStroke(roi
+				StyleCache.strokeWidth(roi.getStrokeWidth()));
+			if (roi.getStrokeColor() != null) StyleCache.setStroke(shape, roi
 				.getStrokeColor());
-			if (roi.getFillColor() != null) shape.getShapeSettings().setFill(roi
+			if (roi.getFillColor() != null) StyleCache.setFill(shape, roi
 				.getFillColor());
 
 			return (T) shape;
@@ -117,15 +137,16 @@ public class IJRoiWrapperToShapeData {
 	/**
 	 * Converts {@link DefaultRoiWrapper} to {@link MaskData}, and preserves
 	 * settings not represented in MaskPredicate.
+	 * <p>
+	 * The mask is packed directly from {@link Roi#getMask()}, rather than by
+	 * testing each pixel of the wrapper.
+	 * </p>
 	 */
 	@Plugin(type = Converter.class, priority = Priority.VERY_HIGH)
 	public final static class DefaultRoiWrapperToMaskData extends
 		AbstractIJRoiWrapperToShapeData<DefaultRoiWrapper<?>, MaskData>
 	{
 
-		@Parameter
-		private ConvertService convertService;
-
 		@Override
 		@SuppressWarnings({ "unchecked", "rawtypes" })
 		public Class<DefaultRoiWrapper<?>> getInputType() {
@@ -139,8 +160,40 @@ public class IJRoiWrapperToShapeData {
 
 		@Override
 		public MaskData convert(final DefaultRoiWrapper<?> wrapper) {
-			return convertService.getInstance(MaskIntervalToMaskData.class).convert(
-				wrapper, MaskData.class);
+			final Roi roi = wrapper.getRoi();
+			final Rectangle bounds = roi.getBounds();
+			final ImageProcessor mask = roi.getMask();
+			// NB: Size the data by the mask itself, it need not match the bounds
+			final int width = mask == null ? bounds.width : mask.getWidth();
+			final int height = mask == null ? bounds.height : mask.getHeight();
+			return new MaskData(bounds.x, bounds.y, width, height, pack(mask, width,
+				height));
+		}
+
+		/**
+		 * Packs the given mask into OMERO mask bytes: row-major, one bit per
+		 * pixel, most significant bit first and rows not padded to whole bytes.
+		 *
+		 * @param mask the mask, non-zero pixels are on; {@code null} if all
+		 *          pixels are on
+		 */
+		private static byte[] pack(final ImageProcessor mask, final int width,
+			final int height)
+		{
+			final int size = width * height;
+			final byte[] packed = new byte[(size + 7) >> 3];
+			if (mask == null) {
+				Arrays.fill(packed, (byte) 0xff);
+				// NB: Bits past the last pixel stay off
+				if ((size & 7) != 0) packed[packed.length - 1] = (byte) (0xff << (8 -
+					(size & 7)));
+				return packed;
+			}
+			final byte[] pixels = mask.getPixels() instanceof byte[] ? (byte[]) mask
+				.getPixels() : (byte[]) mask.convertToByte(false).getPixels();
+			for (int i = 0; i < size; i++)
+				if (pixels[i] != 0) packed[i >> 3] |= 0x80 >>> (i & 7);
+			return packed;
 		}
 
 	}
@@ -178,15 +231,18 @@ public class IJRoiWrapperToShapeData {
 	/**
 	 * Converts {@link IrregularPolylineRoiWrapper} to {@link MaskData}, and
 	 * preserves settings not represented in MaskPredicate.
+	 * <p>
+	 * The mask is rasterized from the outline ImageJ gives the polyline, see
+	 * {@link ShapeRasterizer}: the area of the wide line if it is wider than a
+	 * pixel, otherwise the polyline itself, in which case every pixel of the
+	 * mask is within the margin of the outline and tested against the wrapper.
+	 * </p>
 	 */
 	@Plugin(type = Converter.class, priority = Priority.VERY_HIGH)
 	public final static class IrregularPolylineRoiWrapperToMaskData extends
 		AbstractIJRoiWrapperToShapeData<IrregularPolylineRoiWrapper, MaskData>
 	{
 
-		@Parameter
-		private ConvertService convertService;
-
 		@Override
 		public Class<IrregularPolylineRoiWrapper> getInputType() {
 			return IrregularPolylineRoiWrapper.class;
@@ -199,8 +255,79 @@ public class IJRoiWrapperToShapeData {
 
 		@Override
 		public MaskData convert(final IrregularPolylineRoiWrapper wrapper) {
-			return convertService.getInstance(RealMaskRealIntervalToMaskData.class)
-				.convert(wrapper, MaskData.class);
+			final Roi roi = wrapper.getRoi();
+			if (roi.getStrokeWidth() > 1) {
+				// NB: Use ImageJ's own outline of the wide line, a stroke of our own
+				// differs from it by more than the margin at the ends and joins
+				final ShapeRoi outline = new ShapeRoi(roi);
+				return ShapeRasterizer.rasterize(AffineTransform.getTranslateInstance(
+					outline.getXBase(), outline.getYBase()).createTransformedShape(
+						outline.getShape()), wrapper);
+			}
+			final FloatPolygon fp = roi.getFloatPolygon();
+			final Path2D path = new Path2D.Double();
+			for (int i = 0; i < fp.npoints; i++) {
+				if (i == 0) path.moveTo(fp.xpoints[i], fp.ypoints[i]);
+				else path.lineTo(fp.xpoints[i], fp.ypoints[i]);
+			}
+			// NB: Half a pixel wide on either side, so the closed outline holds no
+			// pixel further than the margin from it
+			return ShapeRasterizer.rasterize(new BasicStroke(1).createStrokedShape(
+				path), wrapper);
+		}
+
+	}
+
+	/**
+	 * Converts {@link IrregularPolylineRoiWrapper} to {@link PolylineData}, and
+	 * preserves settings not represented in MaskPredicate.
+	 * <p>
+	 * This only applies if {@link ROIConstants#POLYLINE_AS_VECTOR_PREF} is set,
+	 * otherwise these ROIs are rasterized by
+	 * {@link IrregularPolylineRoiWrapperToMaskData}. The stroke width is kept as
+	 * part of the shape settings.
+	 * </p>
+	 */
+	@Plugin(type = Converter.class, priority = Priority.VERY_HIGH + 1)
+	public final static class IrregularPolylineRoiWrapperToPolylineData extends
+		AbstractIJRoiWrapperToShapeData<IrregularPolylineRoiWrapper, PolylineData>
+	{
+
+		@Override
+		public boolean canConvert(final ConversionRequest request) {
+			return isEnabled() && super.canConvert(request);
+		}
+
+		@Override
+		public boolean canConvert(final Object src, final Type dest) {
+			return isEnabled() && super.canConvert(src, dest);
+		}
+
+		@Override
+		public boolean canConvert(final Object src, final Class<?> dest) {
+			return isEnabled() && super.canConvert(src, dest);
+		}
+
+		@Override
+		public Class<IrregularPolylineRoiWrapper> getInputType() {
+			return IrregularPolylineRoiWrapper.class;
+		}
+
+		@Override
+		public Class<PolylineData> getOutputType() {
+			return PolylineData.class;
+		}
+
+		@Override
+		public PolylineData convert(final IrregularPolylineRoiWrapper wrapper) {
+			final PolylineData polyline = new PolylineData();
+			Polyshapes.setPoints(polyline, simplify(wrapper.getRoi()
+				.getFloatPolygon(), false));
+			return polyline;
+		}
+
+		private static boolean isEnabled() {
+			return Prefs.getBoolean(ROIConstants.POLYLINE_AS_VECTOR_PREF, false);
 		}
 
 	}
@@ -259,8 +386,18 @@ public class IJRoiWrapperToShapeData {
 
 		@Override
 		public PolygonData convert(final PolygonRoiWrapper wrapper) {
-			return convertService.getInstance(ImageJToOMEROPolygon.class).convert(
-				wrapper, PolygonData.class);
+			final ImageJToOMEROPolygon converter = convertService.getInstance(
+				ImageJToOMEROPolygon.class);
+			final String marker = marker(converter, wrapper.boundaryType(),
+				() -> new PolygonRoiWrapper(standIn(Roi.POLYGON)), PolygonData.class);
+			final PolygonData polygon = marker == null ? converter.convert(wrapper,
+				PolygonData.class) : new PolygonData();
+			if (marker != null && !marker.isEmpty()) polygon.setText(marker);
+			// NB: Transfer the coordinate arrays directly, rather than going through
+			// ImageJToOMEROPolygon which creates an object per vertex
+			Polyshapes.setPoints(polygon, simplify(wrapper.getRoi()
+				.getFloatPolygon(), true));
+			return polygon;
 		}
 
 	}
@@ -289,8 +426,19 @@ public class IJRoiWrapperToShapeData {
 
 		@Override
 		public PolylineData convert(final PolylineRoiWrapper wrapper) {
-			return convertService.getInstance(ImageJToOMEROPolyline.class).convert(
-				wrapper, PolylineData.class);
+			final ImageJToOMEROPolyline converter = convertService.getInstance(
+				ImageJToOMEROPolyline.class);
+			final String marker = marker(converter, wrapper.boundaryType(),
+				() -> new PolylineRoiWrapper(standIn(Roi.POLYLINE)),
+				PolylineData.class);
+			final PolylineData polyline = marker == null ? converter.convert(
+				wrapper, PolylineData.class) : new PolylineData();
+			if (marker != null && !marker.isEmpty()) polyline.setText(marker);
+			// NB: Transfer the coordinate arrays directly, rather than going through
+			// ImageJToOMEROPolyline which creates an object per vertex
+			Polyshapes.setPoints(polyline, simplify(wrapper.getRoi()
+				.getFloatPolygon(), false));
+			return polyline;
 		}
 
 	}
@@ -328,15 +476,16 @@ public class IJRoiWrapperToShapeData {
 	/**
 	 * Converts {@link ShapeRoiWrapper} to {@link MaskData}, and preserves
 	 * settings not represented in MaskPredicate.
+	 * <p>
+	 * The mask is rasterized from the outline of the {@link ShapeRoi}, see
+	 * {@link ShapeRasterizer}.
+	 * </p>
 	 */
 	@Plugin(type = Converter.class, priority = Priority.VERY_HIGH)
 	public final static class ShapeRoiWrapperToMaskData extends
 		AbstractIJRoiWrapperToShapeData<ShapeRoiWrapper, MaskData>
 	{
 
-		@Parameter
-		private ConvertService convertService;
-
 		@Override
 		public Class<ShapeRoiWrapper> getInputType() {
 			return ShapeRoiWrapper.class;
@@ -349,8 +498,11 @@ public class IJRoiWrapperToShapeData {
 
 		@Override
 		public MaskData convert(final ShapeRoiWrapper wrapper) {
-			return convertService.getInstance(RealMaskRealIntervalToMaskData.class)
-				.convert(wrapper, MaskData.class);
+			// NB: The shape of a ShapeRoi is relative to its base
+			final ShapeRoi roi = wrapper.getRoi();
+			return ShapeRasterizer.rasterize(AffineTransform.getTranslateInstance(roi
+				.getXBase(), roi.getYBase()).createTransformedShape(roi.getShape()),
+				wrapper);
 		}
 
 	}
@@ -412,4 +564,48 @@ public class IJRoiWrapperToShapeData {
 
 	}
 
+	// -- Helper methods --
+
+	/**
+	 * Returns the text the given converter records the given boundary type
+	 * with, or {@code null} if it cannot be determined. The text does not depend
+	 * on the vertices, so it is taken once from a three vertex stand-in rather
+	 * than converting every ROI vertex by vertex.
+	 *
+	 * @return the text, empty if the converter sets none
+	 */
+	private static String marker(final Converter<?, ?> converter,
+		final BoundaryType boundaryType,
+		final Supplier<IJRoiWrapper<?, ?>> standIn,
+		final Class<? extends ShapeData> type)
+	{
+		final String key = converter.getClass().getName() + ':' + boundaryType;
+		final String cached = MARKERS.get(key);
+		if (cached != null) return cached;
+		final IJRoiWrapper<?, ?> wrapper = standIn.get();
+		if (wrapper.boundaryType() != boundaryType) return null;
+		final ShapeData shape = converter.convert(wrapper, type);
+		final String text = shape instanceof PolygonData ? ((PolygonData) shape)
+			.getText() : ((PolylineData) shape).getText();
+		final String marker = text == null ? "" : text;
+		MARKERS.putIfAbsent(key, marker);
+		return marker;
+	}
+
+	private static PolygonRoi standIn(final int type) {
+		return new PolygonRoi(new float[] { 0, 1, 0 }, new float[] { 0, 0, 1 }, 3,
+			type);
+	}
+
+	/**
+	 * Simplifies the given vertices with the tolerance set in
+	 * {@link ROIConstants#SIMPLIFY_TOLERANCE_PREF}, if any.
+	 */
+	private static FloatPolygon simplify(final FloatPolygon vertices,
+		final boolean closed)
+	{
+		return Polyshapes.simplify(vertices, Prefs.get(
+			ROIConstants.SIMPLIFY_TOLERANCE_PREF, 0), closed);
+	}
+
 }
@@ -25,6 +25,8 @@
 
 package net.imagej.omero.legacy.convert;
 
+import java.awt.Color;
+
 import ij.gui.ImageRoi;
 import ij.gui.Line;
 import ij.gui.OvalRoi;
@@ -37,10 +39,10 @@ import net.imagej.legacy.convert.roi.box.BoxWrapper;
 import net.imagej.legacy.convert.roi.ellipsoid.EllipsoidWrapper;
 import net.imagej.legacy.convert.roi.line.LineWrapper;
 import net.imagej.legacy.convert.roi.point.PointMaskWrapper;
-import net.imagej.legacy.convert.roi.polygon2d.Polygon2DWrapper;
-import net.imagej.legacy.convert.roi.polyline.PolylineWrapper;
 import net.imagej.omero.legacy.LegacyOMEROROIService;
 import net.imagej.omero.legacy.mask.OMEROMaskWrapper;
+import net.imagej.omero.legacy.polyshape.OMEROPolygonWrapper;
+import net.imagej.omero.legacy.polyshape.OMEROPolylineWrapper;
 import net.imagej.omero.legacy.text.OMEROText;
 import net.imagej.omero.legacy.text.OMEROTextWrapper;
 import net.imagej.omero.roi.OMERORealMask;
@@ -55,6 +57,7 @@ import net.imglib2.roi.MaskPredicate;
 
 import ome.model.units.BigResult;
 import omero.gateway.model.ShapeData;
+import omero.model.Length;
 import omero.model.enums.UnitsLength;
 
 import org.scijava.Priority;
@@ -115,17 +118,17 @@ public final class OMERORealMaskToIJROI {
 
 			// set style
 			try {
-				if (shape.getShapeSettings().getStrokeWidth(UnitsLength.PIXEL) != null)
-					ijRoi.setStrokeWidth(shape.getShapeSettings().getStrokeWidth(
-						UnitsLength.PIXEL).getValue());
+				final Length strokeWidth = shape.getShapeSettings().getStrokeWidth(
+					UnitsLength.PIXEL);
+				if (strokeWidth != null) ijRoi.setStrokeWidth(strokeWidth.getValue());
 			}
 			catch (final BigResult exc) {
 				// Do nothing. Stroke width won't be preserved
 			}
-			if (shape.getShapeSettings().getStroke() != null) ijRoi.setStrokeColor(
-				shape.getShapeSettings().getStroke());
-			if (shape.getShapeSettings().getFill() != null) ijRoi.setFillColor(shape
-				.getShapeSettings().getFill());
+			final Color stroke = StyleCache.stroke(shape);
+			if (stroke != null) ijRoi.setStrokeColor(stroke);
+			final Color fill = StyleCache.fill(shape);
+			if (fill != null) ijRoi.setFillColor(fill);
 
 			// set name
 			if (getText(omeroRoi) != null && !getText(omeroRoi).isEmpty()) ijRoi
@@ -265,7 +268,7 @@ public final class OMERORealMaskToIJROI {
 
 		@Override
 		public PolygonRoi wrap(final OMEROPolygon omeroRoi) {
-			return new Polygon2DWrapper(omeroRoi);
+			return new OMEROPolygonWrapper(omeroRoi);
 		}
 
 		@Override
@@ -292,7 +295,7 @@ public final class OMERORealMaskToIJROI {
 
 		@Override
 		public PolygonRoi wrap(final OMEROPolyline omeroRoi) {
-			return new PolylineWrapper(omeroRoi);
+			return new OMEROPolylineWrapper(omeroRoi);
 		}
 
 		@Override
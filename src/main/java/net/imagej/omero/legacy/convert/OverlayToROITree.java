@@ -35,6 +35,7 @@ import ij.gui.Roi;
 
 import net.imagej.omero.legacy.LazyOverlay;
 import net.imagej.omero.legacy.LegacyOMEROROIService;
+import net.imagej.omero.legacy.mask.MaskSynchronizer;
 import net.imagej.omero.roi.DefaultOMEROROICollection;
 import net.imagej.omero.roi.DefaultOMEROROIElement;
 import net.imagej.omero.roi.OMEROROICollection;
@@ -87,12 +88,20 @@ public class OverlayToROITree extends AbstractConverter<Overlay, ROITree> {
 			throw new IllegalArgumentException("Expected " + getOutputType() +
 				" but received " + dest);
 
-		// Do not load ROIs if they haven't been loaded yet!
-		if (src instanceof LazyOverlay && !((LazyOverlay) src).areROIsLoaded())
-			return (T) ((LazyOverlay) src).getSource();
+		// Do not load ROIs if they haven't been loaded yet, unless they were
+		// cropped in the meantime and the source no longer matches!
+		if (src instanceof LazyOverlay) {
+			final LazyOverlay lazy = (LazyOverlay) src;
+			if (!lazy.areROIsLoaded() && !lazy.hasDeferredOperations())
+				return (T) lazy.getSource();
+		}
+
+		final Roi[] rois = ((Overlay) src).toArray();
 
-		final Map<Long, List<MaskPredicate<?>>> map = convertRois(((Overlay) src)
-			.toArray());
+		// NB: Encode the masks concurrently up front, the synchronize calls made
+		// while converting them are then no-ops
+		MaskSynchronizer.synchronize(rois);
+		final Map<Long, List<MaskPredicate<?>>> map = convertRois(rois);
 
 		// Handle non-omero rois
 		final ROITree rp = new DefaultROITree();
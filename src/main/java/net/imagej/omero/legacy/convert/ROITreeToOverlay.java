@@ -32,7 +32,9 @@ import ij.gui.Overlay;
 import ij.gui.Roi;
 
 import net.imagej.omero.legacy.LazyOverlay;
+import net.imagej.omero.legacy.LoadProgress;
 import net.imagej.omero.legacy.LegacyOMEROROIService;
+import net.imagej.omero.legacy.PlaneOverlay;
 import net.imagej.omero.roi.LazyROITree;
 import net.imagej.omero.roi.OMEROROICollection;
 import net.imagej.roi.ROIService;
@@ -40,6 +42,7 @@ import net.imagej.roi.ROITree;
 import net.imglib2.roi.MaskPredicate;
 
 import org.scijava.Priority;
+import org.scijava.app.StatusService;
 import org.scijava.convert.AbstractConverter;
 import org.scijava.convert.ConvertService;
 import org.scijava.convert.Converter;
@@ -50,6 +53,11 @@ import org.scijava.util.TreeNode;
 /**
  * Converts a {@link ROITree} containing ROIs to an {@link Overlay} containing
  * equivalent ROIs.
+ * <p>
+ * The conversion reports its progress through the {@link StatusService}, and
+ * throws a {@link java.util.concurrent.CancellationException} if the
+ * converting thread is interrupted.
+ * </p>
  *
  * @author Alison Walter
  */
@@ -62,6 +70,9 @@ public class ROITreeToOverlay extends AbstractConverter<ROITree, Overlay> {
 	@Parameter
 	private ROIService roi;
 
+	@Parameter(required = false)
+	private StatusService status;
+
 	@Override
 	public boolean canConvert(final Object src, final Type dest) {
 		return super.canConvert(src, dest) && roi.hasROIs(src);
@@ -95,32 +106,40 @@ public class ROITreeToOverlay extends AbstractConverter<ROITree, Overlay> {
 		if (src instanceof LazyROITree && !((LazyROITree) src).areROIsLoaded())
 			return (T) new LazyOverlay((LazyROITree) src, convert);
 
-		final Overlay overlay = new Overlay();
-		addROIs(overlay, (ROITree) src);
+		final Overlay overlay = new PlaneOverlay();
+		final LoadProgress progress = new LoadProgress(status, "Converting ROIs",
+			countShapes((ROITree) src));
+		addROIs(overlay, (ROITree) src, progress);
+		progress.done();
 		return (T) overlay;
 	}
 
 	// -- Helper methods --
 
-	private void addROIs(final Overlay overlay, final TreeNode<?> dn) {
+	private void addROIs(final Overlay overlay, final TreeNode<?> dn,
+		final LoadProgress progress)
+	{
 		if (dn instanceof OMEROROICollection) {
-			addOMEROROICollection(overlay, (OMEROROICollection) dn);
+			addOMEROROICollection(overlay, (OMEROROICollection) dn, progress);
 			return;
 		}
-		if (dn.data() instanceof MaskPredicate) overlay.add(convert.convert(dn
-			.data(), Roi.class));
+		if (dn.data() instanceof MaskPredicate) {
+			progress.step();
+			overlay.add(convert.convert(dn.data(), Roi.class));
+		}
 		final List<TreeNode<?>> children = dn.children();
 		if (children == null || children.isEmpty()) return;
 		for (final TreeNode<?> child : children)
-			addROIs(overlay, child);
+			addROIs(overlay, child, progress);
 	}
 
 	private void addOMEROROICollection(final Overlay overlay,
-		final OMEROROICollection orc)
+		final OMEROROICollection orc, final LoadProgress progress)
 	{
 		final long id = orc.data().getId();
 		final List<TreeNode<?>> children = orc.children();
 		for (final TreeNode<?> child : children) {
+			progress.step();
 			final Roi ijRoi = convert.convert(child.data(), Roi.class);
 			if (ijRoi == null) throw new IllegalArgumentException("Cannot convert " +
 				child.data().getClass() + " to ij.gui.Roi");
@@ -129,4 +148,13 @@ public class ROITreeToOverlay extends AbstractConverter<ROITree, Overlay> {
 			overlay.add(ijRoi);
 		}
 	}
+
+	private static int countShapes(final TreeNode<?> dn) {
+		if (dn instanceof OMEROROICollection) return dn.children().size();
+		int count = dn.data() instanceof MaskPredicate ? 1 : 0;
+		if (dn.children() == null) return count;
+		for (final TreeNode<?> child : dn.children())
+			count += countShapes(child);
+		return count;
+	}
 }
@@ -0,0 +1,169 @@
+/*-
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2018 - 2023 Open Microscopy Environment:
+ * 	- Board of Regents of the University of Wisconsin-Madison
+ * 	- Glencoe Software, Inc.
+ * 	- University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package net.imagej.omero.legacy.convert;
+
+import java.awt.Color;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import ome.formats.model.UnitsFactory;
+import omero.RInt;
+import omero.gateway.model.ShapeData;
+import omero.gateway.model.ShapeSettingsData;
+import omero.model.Length;
+import omero.model.LengthI;
+import omero.model.Shape;
+
+/**
+ * Shared instances of the style and position values which are copied between
+ * ImageJ 1.x ROIs and OMERO shapes. Overlays typically only use a few distinct
+ * colors and planes, so these are shared rather than allocated for every
+ * shape, in both directions.
+ * <p>
+ * Only immutable values ({@link RInt}s and {@link Color}s) are shared.
+ * {@link Length}s can be modified, so each shape gets its own.
+ * </p>
+ */
+final class StyleCache {
+
+	/** Maximum number of distinct values kept per cache. */
+	private static final int MAX_SIZE = 256;
+
+	private static final RInt[] PLANES = new RInt[MAX_SIZE];
+
+	private static final Map<Integer, Color> COLORS = new ConcurrentHashMap<>();
+
+	/** OMERO color values, by the ARGB value of their {@link Color}. */
+	private static final Map<Integer, RInt> RGBA = new ConcurrentHashMap<>();
+
+	private StyleCache() {
+		// NB: prevent instantiation of utility class
+	}
+
+	/**
+	 * Returns a shared {@link RInt} for the given value, typically a Z, T or C
+	 * plane index.
+	 */
+	public static RInt rint(final int value) {
+		if (value < 0 || value >= PLANES.length) return omero.rtypes.rint(value);
+		RInt r = PLANES[value];
+		if (r == null) {
+			// NB: RInts are immutable, so a racing duplicate is harmless
+			r = omero.rtypes.rint(value);
+			PLANES[value] = r;
+		}
+		return r;
+	}
+
+	/**
+	 * Returns a new OMERO stroke width {@link Length} for an ImageJ width. It is
+	 * not shared, since a {@link LengthI} can be modified.
+	 */
+	public static Length strokeWidth(final float width) {
+		return new LengthI(width, UnitsFactory.Shape_StrokeWidth);
+	}
+
+	/**
+	 * Sets the stroke color of the given shape, to a shared {@link RInt} once
+	 * the color has been seen before.
+	 */
+	public static void setStroke(final ShapeData shape, final Color color) {
+		final Shape shapeI = (Shape) shape.asIObject();
+		final RInt rgba = RGBA.get(color.getRGB());
+		if (rgba == null) {
+			// NB: Let the gateway encode the color the first time
+			shape.getShapeSettings().setStroke(color);
+			cache(color, shapeI.getStrokeColor());
+		}
+		else if (!same(shapeI.getStrokeColor(), rgba)) {
+			shapeI.setStrokeColor(rgba);
+			shape.setDirty(true);
+		}
+	}
+
+	/**
+	 * Sets the fill color of the given shape, to a shared {@link RInt} once the
+	 * color has been seen before.
+	 */
+	public static void setFill(final ShapeData shape, final Color color) {
+		final Shape shapeI = (Shape) shape.asIObject();
+		final RInt rgba = RGBA.get(color.getRGB());
+		if (rgba == null) {
+			shape.getShapeSettings().setFill(color);
+			cache(color, shapeI.getFillColor());
+		}
+		else if (!same(shapeI.getFillColor(), rgba)) {
+			shapeI.setFillColor(rgba);
+			shape.setDirty(true);
+		}
+	}
+
+	/**
+	 * Returns a shared {@link Color} equal to
+	 * {@link ShapeSettingsData#getStroke()} of the given shape.
+	 */
+	public static Color stroke(final ShapeData shape) {
+		final RInt rgba = ((Shape) shape.asIObject()).getStrokeColor();
+		if (rgba == null) return shape.getShapeSettings().getStroke();
+		return get(COLORS, rgba.getValue(), c -> shape.getShapeSettings()
+			.getStroke());
+	}
+
+	/**
+	 * Returns a shared {@link Color} equal to {@link ShapeSettingsData#getFill()}
+	 * of the given shape.
+	 */
+	public static Color fill(final ShapeData shape) {
+		final RInt rgba = ((Shape) shape.asIObject()).getFillColor();
+		if (rgba == null) return shape.getShapeSettings().getFill();
+		return get(COLORS, rgba.getValue(), c -> shape.getShapeSettings()
+			.getFill());
+	}
+
+	// -- Helper methods --
+
+	private static void cache(final Color color, final RInt rgba) {
+		if (rgba != null && RGBA.size() < MAX_SIZE) RGBA.putIfAbsent(color
+			.getRGB(), rgba);
+	}
+
+	private static boolean same(final RInt a, final RInt b) {
+		return a != null && a.getValue() == b.getValue();
+	}
+
+	private static <K, V> V get(final Map<K, V> cache, final K key,
+		final Function<K, V> create)
+	{
+		final V cached = cache.get(key);
+		if (cached != null) return cached;
+		final V value = create.apply(key);
+		// NB: Stop caching once full, rather than growing without bound
+		if (value != null && cache.size() < MAX_SIZE) cache.putIfAbsent(key,
+			value);
+		return value;
+	}
+}
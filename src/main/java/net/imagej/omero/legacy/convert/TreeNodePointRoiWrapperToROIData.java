@@ -26,27 +26,27 @@
 package net.imagej.omero.legacy.convert;
 
 import java.lang.reflect.Type;
-import java.util.Iterator;
+import java.util.ArrayList;
 import java.util.List;
 
 import net.imagej.legacy.convert.roi.point.PointRoiWrapper;
-import net.imagej.omero.roi.point.TreeNodeRPCToROIData;
 
 import org.scijava.Priority;
 import org.scijava.convert.AbstractConverter;
-import org.scijava.convert.ConvertService;
 import org.scijava.convert.Converter;
-import org.scijava.plugin.Parameter;
 import org.scijava.plugin.Plugin;
 import org.scijava.util.TreeNode;
 
 import ij.gui.PointRoi;
-import ome.formats.model.UnitsFactory;
+import ij.process.FloatPolygon;
 import omero.gateway.model.PointData;
 import omero.gateway.model.ROIData;
 import omero.gateway.model.ShapeData;
-import omero.model.LengthI;
 import omero.model.Point;
+import omero.model.PointI;
+import omero.model.Roi;
+import omero.model.RoiI;
+import omero.model.Shape;
 
 /**
  * Converts a {@link PointRoiWrapper} to a {@link ROIData}. Since
@@ -61,9 +61,6 @@ public class TreeNodePointRoiWrapperToROIData extends
 	AbstractConverter<TreeNode<PointRoiWrapper>, ROIData>
 {
 
-	@Parameter
-	private ConvertService convertService;
-
 	@Override
 	public boolean canConvert(final Object src, final Type dest) {
 		return super.canConvert(src, dest) && ((TreeNode<?>) src)
@@ -100,44 +97,63 @@ public class TreeNodePointRoiWrapperToROIData extends
 			throw new IllegalArgumentException("Expected: " + getOutputType() +
 				" Received: " + dest);
 
-		final ROIData roiData = convertService.getInstance(
-			TreeNodeRPCToROIData.class).convert(src, ROIData.class);
 		final PointRoi ijRoi = ((PointRoiWrapper) ((TreeNode<?>) src).data())
 			.getRoi();
+		return (T) convert(ijRoi);
+	}
+
+	// -- Helper methods --
 
-		final Iterator<List<ShapeData>> itr = roiData.getIterator();
-		while (itr.hasNext()) {
-			for (final ShapeData shape : itr.next()) {
-				if (shape instanceof PointData) setAdditionalSettings((PointData) shape,
-					ijRoi);
-				else throw new IllegalArgumentException("Not PointData!?");
-			}
+	/**
+	 * Creates the {@link ROIData} in a single pass over the {@link PointRoi}
+	 * coordinate arrays. The position and style settings are computed once and
+	 * shared by all points.
+	 */
+	private ROIData convert(final PointRoi ijRoi) {
+		final PointData template = new PointData();
+		setAdditionalSettings(template, ijRoi);
+		final Point style = (Point) template.asIObject();
+
+		final FloatPolygon points = ijRoi.getFloatPolygon();
+		final List<Shape> shapes = new ArrayList<>(points.npoints);
+		for (int i = 0; i < points.npoints; i++) {
+			final Point p = new PointI();
+			p.setX(omero.rtypes.rdouble(points.xpoints[i]));
+			p.setY(omero.rtypes.rdouble(points.ypoints[i]));
+			p.setTheZ(style.getTheZ());
+			p.setTheT(style.getTheT());
+			p.setTheC(style.getTheC());
+			p.setStrokeWidth(style.getStrokeWidth());
+			p.setStrokeColor(style.getStrokeColor());
+			p.setFillColor(style.getFillColor());
+			shapes.add(p);
 		}
 
-		return (T) roiData;
+		// NB: Add all shapes before creating the ROIData, so its shape map is
+		// built once rather than updated per point
+		final Roi roi = new RoiI();
+		roi.addAllShapeSet(shapes);
+		return new ROIData(roi);
 	}
 
-	// -- Helper methods --
-
 	private void setAdditionalSettings(final PointData omeroPoint,
 		final PointRoi ijPoint)
 	{
 		final Point omeroPointI = (Point) omeroPoint.asIObject();
 
-		if (ijPoint.getZPosition() != 0) omeroPointI.setTheZ(omero.rtypes.rint(
+		if (ijPoint.getZPosition() != 0) omeroPointI.setTheZ(StyleCache.rint(
 			ijPoint.getZPosition() - 1));
-		if (ijPoint.getTPosition() != 0) omeroPointI.setTheT(omero.rtypes.rint(
+		if (ijPoint.getTPosition() != 0) omeroPointI.setTheT(StyleCache.rint(
 			ijPoint.getTPosition() - 1));
-		if (ijPoint.getCPosition() != 0) omeroPointI.setTheC(omero.rtypes.rint(
+		if (ijPoint.getCPosition() != 0) omeroPointI.setTheC(StyleCache.rint(
 			ijPoint.getCPosition() - 1));
 
 		if (ijPoint.getStrokeWidth() > 0) omeroPoint.getShapeSettings()
-			.setStrokeWidth(new LengthI(ijPoint.getStrokeWidth(),
-				UnitsFactory.Shape_StrokeWidth));
-		if (ijPoint.getStrokeColor() != null) omeroPoint.getShapeSettings()
-			.setStroke(ijPoint.getStrokeColor());
-		if (ijPoint.getFillColor() != null) omeroPoint.getShapeSettings().setFill(
-			ijPoint.getFillColor());
+			.setStrokeWidth(StyleCache.strokeWidth(ijPoint.getStrokeWidth()));
+		if (ijPoint.getStrokeColor() != null) StyleCache.setStroke(omeroPoint,
+			ijPoint.getStrokeColor());
+		if (ijPoint.getFillColor() != null) StyleCache.setFill(omeroPoint, ijPoint
+			.getFillColor());
 	}
 
 }
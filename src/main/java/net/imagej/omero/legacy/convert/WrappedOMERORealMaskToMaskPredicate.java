@@ -36,10 +36,10 @@ import net.imagej.legacy.convert.roi.box.BoxWrapper;
 import net.imagej.legacy.convert.roi.ellipsoid.EllipsoidWrapper;
 import net.imagej.legacy.convert.roi.line.LineWrapper;
 import net.imagej.legacy.convert.roi.point.PointMaskWrapper;
-import net.imagej.legacy.convert.roi.polygon2d.Polygon2DWrapper;
-import net.imagej.legacy.convert.roi.polyline.PolylineWrapper;
 import net.imagej.omero.legacy.LegacyOMEROROIService;
 import net.imagej.omero.legacy.mask.OMEROMaskWrapper;
+import net.imagej.omero.legacy.polyshape.OMEROPolygonWrapper;
+import net.imagej.omero.legacy.polyshape.OMEROPolylineWrapper;
 import net.imagej.omero.legacy.text.OMEROText;
 import net.imagej.omero.legacy.text.OMEROTextWrapper;
 import net.imagej.omero.roi.OMERORealMask;
@@ -52,7 +52,6 @@ import net.imagej.omero.roi.polyshape.OMEROPolyline;
 import net.imagej.omero.roi.rectangle.OMERORectangle;
 import net.imglib2.roi.MaskPredicate;
 
-import ome.formats.model.UnitsFactory;
 import omero.RInt;
 import omero.gateway.model.EllipseData;
 import omero.gateway.model.LineData;
@@ -62,7 +61,6 @@ import omero.gateway.model.PolygonData;
 import omero.gateway.model.PolylineData;
 import omero.gateway.model.RectangleData;
 import omero.gateway.model.ShapeData;
-import omero.model.LengthI;
 import omero.model.Shape;
 
 import org.scijava.Priority;
@@ -148,12 +146,11 @@ public final class WrappedOMERORealMaskToMaskPredicate {
 				LegacyOMEROROIService.OMERO_ROI_C), ijRoi.getCPosition()));
 
 			if (ijRoi.getStrokeWidth() > 0) omeroRoi.getShapeSettings()
-				.setStrokeWidth(new LengthI(ijRoi.getStrokeWidth(),
-					UnitsFactory.Shape_StrokeWidth));
-			if (ijRoi.getStrokeColor() != null) omeroRoi.getShapeSettings().setStroke(
-				ijRoi.getStrokeColor());
-			if (ijRoi.getFillColor() != null) omeroRoi.getShapeSettings().setFill(
-				ijRoi.getFillColor());
+				.setStrokeWidth(StyleCache.strokeWidth(ijRoi.getStrokeWidth()));
+			if (ijRoi.getStrokeColor() != null) StyleCache.setStroke(omeroRoi, ijRoi
+				.getStrokeColor());
+			if (ijRoi.getFillColor() != null) StyleCache.setFill(omeroRoi, ijRoi
+				.getFillColor());
 			setText((W) src);
 
 			return (T) ((W) src).getUpdatedSource();
@@ -168,10 +165,10 @@ public final class WrappedOMERORealMaskToMaskPredicate {
 				final int pos = Integer.parseInt(omeroPos);
 				// NB: Do NOT set this to n -1, null always!
 				if (pos < 0) return null;
-				return omero.rtypes.rint(pos);
+				return StyleCache.rint(pos);
 			}
 			if (ijPos == 0) return null;
-			return omero.rtypes.rint(ijPos - 1);
+			return StyleCache.rint(ijPos - 1);
 		}
 	}
 
@@ -284,57 +281,51 @@ public final class WrappedOMERORealMaskToMaskPredicate {
 		}
 	}
 
-	/**
-	 * Converts {@link PolylineWrapper} which wraps {@link OMEROPolyline} to
-	 * {@link OMEROPolyline}.
-	 */
+	/** Converts {@link OMEROPolygonWrapper} to {@link OMEROPolygon}. */
 	@Plugin(type = Converter.class, priority = Priority.VERY_HIGH)
-	public static class WrappedOMEROPolylineToOMEROPolyline extends
-		AbstractWrappedOMERORealMaskToMaskPredicate<PolylineWrapper, OMEROPolyline>
+	public static class OMEROPolygonWrapperToOMEROPolygon extends
+		AbstractWrappedOMERORealMaskToMaskPredicate<OMEROPolygonWrapper, OMEROPolygon>
 	{
 
 		@Override
-		public Class<OMEROPolyline> getOutputType() {
-			return OMEROPolyline.class;
+		public Class<OMEROPolygon> getOutputType() {
+			return OMEROPolygon.class;
 		}
 
 		@Override
-		public Class<PolylineWrapper> getInputType() {
-			return PolylineWrapper.class;
+		public Class<OMEROPolygonWrapper> getInputType() {
+			return OMEROPolygonWrapper.class;
 		}
 
 		@Override
-		public void setText(final PolylineWrapper wrapper) {
+		public void setText(final OMEROPolygonWrapper wrapper) {
 			if (wrapper.getName() != null && !wrapper.getName().isEmpty()) {
-				final PolylineData d = ((OMEROPolyline) wrapper.getSource()).getShape();
+				final PolygonData d = wrapper.getSource().getShape();
 				d.setText(wrapper.getName());
 			}
 		}
 	}
 
-	/**
-	 * Converts {@link Polygon2DWrapper} which wraps {@link OMEROPolygon} to
-	 * {@link OMEROPolygon}.
-	 */
+	/** Converts {@link OMEROPolylineWrapper} to {@link OMEROPolyline}. */
 	@Plugin(type = Converter.class, priority = Priority.VERY_HIGH)
-	public static class WrappedOMEROPolygonToOMEROPolygon extends
-		AbstractWrappedOMERORealMaskToMaskPredicate<Polygon2DWrapper, OMEROPolygon>
+	public static class OMEROPolylineWrapperToOMEROPolyline extends
+		AbstractWrappedOMERORealMaskToMaskPredicate<OMEROPolylineWrapper, OMEROPolyline>
 	{
 
 		@Override
-		public Class<OMEROPolygon> getOutputType() {
-			return OMEROPolygon.class;
+		public Class<OMEROPolyline> getOutputType() {
+			return OMEROPolyline.class;
 		}
 
 		@Override
-		public Class<Polygon2DWrapper> getInputType() {
-			return Polygon2DWrapper.class;
+		public Class<OMEROPolylineWrapper> getInputType() {
+			return OMEROPolylineWrapper.class;
 		}
 
 		@Override
-		public void setText(final Polygon2DWrapper wrapper) {
+		public void setText(final OMEROPolylineWrapper wrapper) {
 			if (wrapper.getName() != null && !wrapper.getName().isEmpty()) {
-				final PolygonData d = ((OMEROPolygon) wrapper.getSource()).getShape();
+				final PolylineData d = wrapper.getSource().getShape();
 				d.setText(wrapper.getName());
 			}
 		}
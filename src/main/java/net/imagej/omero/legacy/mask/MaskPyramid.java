@@ -0,0 +1,218 @@
+/*-
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2018 - 2023 Open Microscopy Environment:
+ * 	- Board of Regents of the University of Wisconsin-Madison
+ * 	- Glencoe Software, Inc.
+ * 	- University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package net.imagej.omero.legacy.mask;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.IndexColorModel;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Downsampled levels of a {@link TiledMask}, for painting at low
+ * magnification.
+ * <p>
+ * Level {@code k} halves the resolution {@code k} times. A pixel of a level is
+ * on if any of the mask pixels it covers is on, so thin structures do not
+ * disappear when zoomed out. Levels are built in the background on first use,
+ * each from the next finer one, and rebuilt after the mask is modified. Until
+ * a level is built, a coarser level which is already built can be painted
+ * instead.
+ * </p>
+ */
+final class MaskPyramid {
+
+	/** Levels with more pixels than this are not built (2 MiB per level). */
+	private static final long MAX_LEVEL_PIXELS = 16L << 20;
+
+	/** Coarsest level which is built. */
+	private static final int MAX_LEVEL = 16;
+
+	/** Builds the levels, so painting never waits for them. */
+	private static final ExecutorService BUILDER = Executors
+		.newSingleThreadExecutor(runnable -> {
+			final Thread thread = new Thread(runnable, "MaskPyramid builder");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+	private final TiledMask mask;
+	private final WritableRaster[] levels = new WritableRaster[MAX_LEVEL + 1];
+	private final BufferedImage[] images = new BufferedImage[MAX_LEVEL + 1];
+	private long modCount;
+
+	/** Coarsest level being built, or 0 if no build is pending. */
+	private int building;
+
+	MaskPyramid(final TiledMask mask) {
+		this.mask = mask;
+		modCount = mask.modCount();
+	}
+
+	/** Returns the mask these levels are built from. */
+	TiledMask mask() {
+		return mask;
+	}
+
+	/**
+	 * Returns the level to paint at the given magnification: the coarsest
+	 * level whose pixels are no smaller than a screen pixel.
+	 */
+	static int level(final double magnification) {
+		if (magnification >= 1 || magnification <= 0) return 0;
+		final int level = (int) Math.floor(Math.log(1 / magnification) / Math
+			.log(2));
+		return Math.min(level, MAX_LEVEL);
+	}
+
+	/**
+	 * Returns the level to paint in place of the given one. This is the level
+	 * itself if it is built, and otherwise the finest coarser level which is
+	 * built. If the level is not built, it is built in the background.
+	 *
+	 * @param level the level, must be at least 1
+	 * @param onBuilt run once the level has been built in the background
+	 * @return the level to paint, -1 if no suitable level is built yet, or 0 if
+	 *         the level is too large to be built
+	 */
+	synchronized int available(final int level, final Runnable onBuilt) {
+		if (level < 1 || level > MAX_LEVEL) throw new IllegalArgumentException(
+			"Invalid level: " + level);
+		if (!buildable(level)) return 0;
+
+		final long current = mask.modCount();
+		if (current != modCount) {
+			for (int i = 0; i <= MAX_LEVEL; i++) {
+				levels[i] = null;
+				images[i] = null;
+			}
+			modCount = current;
+			building = 0;
+		}
+
+		if (levels[level] != null) return level;
+		if (building < level) {
+			building = level;
+			final long generation = modCount;
+			BUILDER.execute(() -> build(level, generation, onBuilt));
+		}
+		for (int coarser = level + 1; coarser <= MAX_LEVEL; coarser++)
+			if (levels[coarser] != null) return coarser;
+		return -1;
+	}
+
+	/**
+	 * Returns an image of the given level, or {@code null} if it is not built.
+	 * Each pixel of the image covers {@code 1 << level} mask pixels in each
+	 * dimension.
+	 *
+	 * @param level a level returned by {@link #available(int, Runnable)}
+	 * @param cm two color model, index 1 is used where the mask is on
+	 */
+	synchronized BufferedImage image(final int level, final IndexColorModel cm) {
+		if (levels[level] == null) return null;
+		if (images[level] == null || images[level].getColorModel() != cm)
+			images[level] = new BufferedImage(cm, levels[level], false, null);
+		return images[level];
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * Builds the levels up to the given one, each from the next finer one. The
+	 * finest level which can be built is built from the mask, row by row.
+	 */
+	private void build(final int target, final long generation,
+		final Runnable onBuilt)
+	{
+		try {
+			int first = 1;
+			while (!buildable(first))
+				first++;
+			for (int level = first; level <= target; level++) {
+				final WritableRaster finer;
+				synchronized (this) {
+					if (modCount != generation) return;
+					if (levels[level] != null) continue;
+					finer = level > first ? levels[level - 1] : null;
+				}
+				final WritableRaster raster = finer == null ? fromMask(level)
+					: fromFiner(finer, level);
+				synchronized (this) {
+					// NB: Discard levels of a mask which was modified meanwhile
+					if (modCount != generation || mask.modCount() != generation) return;
+					levels[level] = raster;
+				}
+			}
+		}
+		finally {
+			synchronized (this) {
+				if (building == target) building = 0;
+			}
+		}
+		onBuilt.run();
+	}
+
+	private WritableRaster fromMask(final int level) {
+		final WritableRaster raster = createRaster(level);
+		final byte[] row = new byte[mask.width()];
+		for (int y = 0; y < mask.height(); y++) {
+			mask.readRow(y, row);
+			for (int x = 0; x < row.length; x++)
+				if (row[x] != 0) raster.setSample(x >> level, y >> level, 0, 1);
+		}
+		return raster;
+	}
+
+	private WritableRaster fromFiner(final WritableRaster finer,
+		final int level)
+	{
+		final WritableRaster raster = createRaster(level);
+		for (int y = 0; y < finer.getHeight(); y++)
+			for (int x = 0; x < finer.getWidth(); x++)
+				if (finer.getSample(x, y, 0) != 0) raster.setSample(x >> 1, y >> 1, 0,
+					1);
+		return raster;
+	}
+
+	private WritableRaster createRaster(final int level) {
+		return Raster.createWritableRaster(new MultiPixelPackedSampleModel(
+			DataBuffer.TYPE_BYTE, size(mask.width(), level), size(mask.height(),
+				level), 1), null);
+	}
+
+	private boolean buildable(final int level) {
+		return (long) size(mask.width(), level) * size(mask.height(),
+			level) <= MAX_LEVEL_PIXELS;
+	}
+
+	private static int size(final int size, final int level) {
+		return (int) (((long) size + (1L << level) - 1) >> level);
+	}
+}
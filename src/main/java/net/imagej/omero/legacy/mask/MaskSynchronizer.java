@@ -0,0 +1,129 @@
+/*-
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2018 - 2023 Open Microscopy Environment:
+ * 	- Board of Regents of the University of Wisconsin-Madison
+ * 	- Glencoe Software, Inc.
+ * 	- University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package net.imagej.omero.legacy.mask;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import ij.gui.Roi;
+
+/**
+ * Synchronizes many {@link OMEROMaskWrapper}s concurrently.
+ * <p>
+ * Encoding a mask back to {@code MaskData} bytes is CPU heavy, so when an
+ * overlay with many masks is converted back to OMERO the masks are encoded on
+ * a bounded pool first. The number of mask bytes being encoded at once is
+ * capped, so many large masks do not exhaust the heap. Synchronizing releases
+ * the on-heap processor of a wrapper, so synchronizing it again without
+ * further edits only checks its tiles, and encodes nothing.
+ * </p>
+ */
+public final class MaskSynchronizer {
+
+	/** Maximum number of mask bytes being encoded at once (256 MiB). */
+	private static final int MAX_IN_FLIGHT_BYTES = 256 << 20;
+
+	private MaskSynchronizer() {
+		// NB: prevent instantiation of utility class
+	}
+
+	/**
+	 * Synchronizes all {@link OMEROMaskWrapper}s among the given ROIs, and
+	 * ignores all other ROIs.
+	 * <p>
+	 * If the calling thread is interrupted, the remaining masks are not
+	 * synchronized and the interrupt flag is restored.
+	 * </p>
+	 */
+	public static void synchronize(final Roi[] rois) {
+		final List<OMEROMaskWrapper> masks = new ArrayList<>();
+		for (final Roi roi : rois)
+			if (roi instanceof OMEROMaskWrapper) masks.add((OMEROMaskWrapper) roi);
+		synchronize(masks);
+	}
+
+	/** Synchronizes the given wrappers concurrently. */
+	public static void synchronize(
+		final Collection<? extends OMEROMaskWrapper> masks)
+	{
+		final int threads = Math.min(masks.size(), Runtime.getRuntime()
+			.availableProcessors());
+		if (threads <= 1) {
+			for (final OMEROMaskWrapper mask : masks)
+				mask.synchronize();
+			return;
+		}
+
+		final ExecutorService pool = Executors.newFixedThreadPool(threads);
+		final Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT_BYTES);
+		final List<Future<?>> futures = new ArrayList<>(masks.size());
+		try {
+			for (final OMEROMaskWrapper mask : masks) {
+				final int cost = cost(mask);
+				inFlight.acquire(cost);
+				futures.add(pool.submit(() -> {
+					try {
+						mask.synchronize();
+					}
+					finally {
+						inFlight.release(cost);
+					}
+				}));
+			}
+			for (final Future<?> future : futures)
+				future.get();
+		}
+		catch (final InterruptedException exc) {
+			for (final Future<?> future : futures)
+				future.cancel(true);
+			Thread.currentThread().interrupt();
+		}
+		catch (final ExecutionException exc) {
+			if (exc.getCause() instanceof RuntimeException)
+				throw (RuntimeException) exc.getCause();
+			if (exc.getCause() instanceof Error) throw (Error) exc.getCause();
+			throw new IllegalStateException(exc.getCause());
+		}
+		finally {
+			pool.shutdown();
+		}
+	}
+
+	// -- Helper methods --
+
+	/** Returns the number of packed bytes encoding the given mask may need. */
+	private static int cost(final OMEROMaskWrapper mask) {
+		final long bytes = ((long) mask.getTiledMask().width() * mask
+			.getTiledMask().height() + 7) >> 3;
+		return (int) Math.max(1, Math.min(bytes, MAX_IN_FLIGHT_BYTES));
+	}
+}
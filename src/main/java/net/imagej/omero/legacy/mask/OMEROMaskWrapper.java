@@ -25,7 +25,21 @@
 
 package net.imagej.omero.legacy.mask;
 
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.IndexColorModel;
+import java.awt.image.WritableRaster;
+import java.util.List;
+
+import ij.gui.ImageCanvas;
 import ij.gui.ImageRoi;
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
 
 import net.imagej.legacy.convert.roi.MaskPredicateWrapper;
 import net.imagej.omero.roi.mask.OMEROMask;
@@ -34,6 +48,25 @@ import omero.gateway.model.MaskData;
 
 /**
  * Wraps an {@link OMEROMask} as a {@link ImageRoi}.
+ * <p>
+ * The mask pixels are kept in an {@link OffHeapMask}, and decoded tile by tile
+ * into a {@link TiledMask} as they are painted or edited, so the cost of
+ * opening a mask is proportional to the visible area. The {@link MaskData}
+ * still holds its packed mask bytes on the heap, since those are what is
+ * uploaded; only the unpacked pixels are kept off the heap.
+ * </p>
+ * <p>
+ * An on-heap {@link ImageProcessor} is only created if {@link #getProcessor()}
+ * is called, and is released again on {@link #synchronize()}. On
+ * {@link #synchronize()} the mask is also cropped to the bounds of its
+ * foreground, so erased borders are not uploaded. When zoomed out, the mask is
+ * painted from downsampled levels which are built on first use.
+ * </p>
+ * <p>
+ * {@link #synchronize()} may be called on another thread than painting. The
+ * mask is replaced together with the location and size of this ROI while
+ * holding its lock, and painting reads them at once likewise.
+ * </p>
  *
  * @author Alison Walter
  */
@@ -41,12 +74,28 @@ public class OMEROMaskWrapper extends ImageRoi implements
 	MaskPredicateWrapper<OMEROMask>
 {
 
+	private static final IndexColorModel OPAQUE = colorModel(0xff000000);
+	private static final IndexColorModel TRANSPARENT = colorModel(0x00000000);
+
+	private static final int TILE_SIZE = TiledMask.TILE_SIZE;
+
 	private final OMEROMask source;
+	// NB: Replaced with the location and size of this ROI under its lock
+	private volatile TiledMask mask;
+	private ImageProcessor processor;
+	private MaskPyramid pyramid;
+	private boolean cloning;
 
 	public OMEROMaskWrapper(final OMEROMask source) {
+		// NB: ImageRoi requires an image, but the pixels are stored off-heap
 		super((int) Math.floor(source.getShape().getX()), (int) Math.floor(source
-			.getShape().getY()), source.getShape().getMaskAsBufferedImage());
+			.getShape().getY()), new ByteProcessor(1, 1));
 		this.source = source;
+		final MaskData md = source.getShape();
+		mask = new TiledMask(OffHeapMask.fromBytes((int) md.getWidth(), (int) md
+			.getHeight(), md.getMask()));
+		width = mask.width();
+		height = mask.height();
 	}
 
 	@Override
@@ -54,6 +103,15 @@ public class OMEROMaskWrapper extends ImageRoi implements
 		return source;
 	}
 
+	/**
+	 * Returns the tiled mask pixels. Pixels set through it are written back to
+	 * the {@link MaskData} on {@link #synchronize()}, re-encoding only the
+	 * modified tiles.
+	 */
+	public TiledMask getTiledMask() {
+		return mask;
+	}
+
 	@Override
 	public void synchronize() {
 		final MaskData md = source.getShape();
@@ -63,7 +121,264 @@ public class OMEROMaskWrapper extends ImageRoi implements
 		if ((long) Math.floor(md.getX()) != getXBase()) md.setX(getXBase());
 		if ((long) Math.floor(md.getY()) != getYBase()) md.setY(getYBase());
 
-		md.setMask(getProcessor().getBufferedImage());
+		final ImageProcessor edited;
+		synchronized (this) {
+			edited = processor;
+			// NB: Paint from the tiles again, rather than from the processor
+			processor = null;
+		}
+		if (edited != null) {
+			// NB: Edits made through the processor replace the whole mask, but
+			// there is nothing to encode if none of its pixels changed
+			final OffHeapMask bits;
+			if (edited.getWidth() == mask.width() && edited.getHeight() == mask
+				.height())
+			{
+				mask.flush();
+				bits = mask.bits();
+				if (!bits.setPixels(edited)) return;
+			}
+			else bits = OffHeapMask.fromProcessor(edited);
+			synchronized (this) {
+				mask = new TiledMask(bits);
+				width = bits.width();
+				height = bits.height();
+			}
+			if (cropToForeground(md)) return;
+			md.setWidth(bits.width());
+			md.setHeight(bits.height());
+			md.setMask(bits.toBytes());
+			return;
+		}
+
+		final List<Rectangle> modified = mask.flush();
+		if (modified.isEmpty() || cropToForeground(md)) return;
+		final OffHeapMask bits = mask.bits();
+		final byte[] packed = md.getMask();
+		if (packed == null || packed.length < ((long) bits.width() * bits
+			.height() + 7) >> 3)
+		{
+			md.setMask(bits.toBytes());
+			return;
+		}
+		for (final Rectangle region : modified)
+			bits.copyTo(packed, region);
+		md.setMask(packed);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * This creates an on-heap copy of the mask, which is written back to the
+	 * {@link MaskData} on {@link #synchronize()}. The copy is released by
+	 * {@link #synchronize()}, so call this again for further edits.
+	 * </p>
+	 */
+	@Override
+	public synchronized ImageProcessor getProcessor() {
+		// NB: ImageRoi.clone() duplicates the processor, which clone() replaces
+		if (cloning && processor == null) return new ByteProcessor(1, 1);
+		if (processor == null) processor = mask.toProcessor();
+		return processor;
+	}
+
+	@Override
+	public synchronized void setProcessor(final ImageProcessor ip) {
+		// NB: ImageRoi may call this before the mask has been created
+		if (mask == null) {
+			super.setProcessor(ip);
+			return;
+		}
+		processor = ip;
+		width = ip.getWidth();
+		height = ip.getHeight();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The copy has its own copy of the off-heap mask, so editing it does not
+	 * change this ROI. No on-heap processor is created for it, unless this ROI
+	 * has one.
+	 * </p>
+	 */
+	@Override
+	public synchronized Object clone() {
+		final OMEROMaskWrapper copy;
+		cloning = true;
+		try {
+			copy = (OMEROMaskWrapper) super.clone();
+		}
+		finally {
+			cloning = false;
+		}
+		copy.cloning = false;
+		copy.mask = mask.copy();
+		copy.processor = processor == null ? null : processor.duplicate();
+		copy.pyramid = null;
+		copy.width = width;
+		copy.height = height;
+		return copy;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The mask is painted as by {@link #drawOverlay(Graphics)}, with the outline
+	 * of its bounds on top.
+	 * </p>
+	 */
+	@Override
+	public void draw(final Graphics g) {
+		final Rectangle b = paint(g);
+		g.setColor(getStrokeColor() == null ? getColor() : getStrokeColor());
+		g.drawRect(screenX(b.x), screenY(b.y), screenX(b.x + b.width) - screenX(
+			b.x), screenY(b.y + b.height) - screenY(b.y));
+	}
+
+	@Override
+	public void drawOverlay(final Graphics g) {
+		paint(g);
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * Paints the mask from its tiles, or from a downsampled level.
+	 *
+	 * @return the bounds of the mask that was painted
+	 */
+	private Rectangle paint(final Graphics g) {
+		// NB: Read the mask with its geometry at once, since synchronize() may
+		// replace them on another thread
+		final TiledMask tiles;
+		final ImageProcessor edited;
+		final Rectangle bounds;
+		synchronized (this) {
+			tiles = mask;
+			edited = processor;
+			bounds = new Rectangle(x, y, width, height);
+		}
+		final int x0 = bounds.x;
+		final int y0 = bounds.y;
+
+		final double mag = ic == null ? 1 : ic.getMagnification();
+		Rectangle visible = bounds;
+		final Rectangle clip = g.getClipBounds();
+		if (clip != null) visible = visible.intersection(new Rectangle(offScreenX(
+			clip.x), offScreenY(clip.y), (int) Math.ceil(clip.width / mag) + 1,
+			(int) Math.ceil(clip.height / mag) + 1));
+		if (visible.isEmpty()) return bounds;
+
+		final Graphics2D g2d = (Graphics2D) g.create();
+		try {
+			if (getOpacity() < 1) g2d.setComposite(AlphaComposite.getInstance(
+				AlphaComposite.SRC_OVER, (float) getOpacity()));
+			final IndexColorModel cm = getZeroTransparent() ? TRANSPARENT
+				: OPAQUE;
+
+			final int level = edited == null ? MaskPyramid.level(mag) : 0;
+			final MaskPyramid levels = level > 0 ? pyramid(tiles) : null;
+			// NB: Levels are built in the background, repaint once one is ready
+			final int available = level > 0 ? levels.available(level,
+				this::repaint) : 0;
+			if (available < 0) return bounds;
+			final BufferedImage image = available > 0 ? levels.image(available, cm)
+				: null;
+			if (available > 0 && image == null) return bounds;
+			if (image != null) {
+				final int scale = 1 << available;
+				g2d.drawImage(image, screenX(x0), screenY(y0), screenX(x0 + image
+					.getWidth() * scale), screenY(y0 + image.getHeight() * scale), 0, 0,
+					image.getWidth(), image.getHeight(), null);
+				return bounds;
+			}
+
+			final int firstX = (visible.x - x0) / TILE_SIZE * TILE_SIZE;
+			final int firstY = (visible.y - y0) / TILE_SIZE * TILE_SIZE;
+			for (int ty = firstY; ty < visible.y + visible.height - y0; ty +=
+				TILE_SIZE)
+			{
+				final int th = Math.min(TILE_SIZE, bounds.height - ty);
+				for (int tx = firstX; tx < visible.x + visible.width - x0; tx +=
+					TILE_SIZE)
+				{
+					final int tw = Math.min(TILE_SIZE, bounds.width - tx);
+					if (tw <= 0 || th <= 0) continue;
+					final BufferedImage tile = edited == null ? tiles.tileImage(tx /
+						TILE_SIZE, ty / TILE_SIZE, cm) : createTile(edited, tx, ty, tw, th,
+							cm);
+					g2d.drawImage(tile, screenX(x0 + tx), screenY(y0 + ty), screenX(x0 +
+						tx + tw), screenY(y0 + ty + th), 0, 0, tw, th, null);
+				}
+			}
+			return bounds;
+		}
+		finally {
+			g2d.dispose();
+		}
+	}
+
+	/** Creates a tile from unsynchronized edits made through the processor. */
+	private static BufferedImage createTile(final ImageProcessor ip, final int x,
+		final int y, final int w, final int h, final IndexColorModel cm)
+	{
+		final BufferedImage tile = new BufferedImage(w, h,
+			BufferedImage.TYPE_BYTE_BINARY, cm);
+		final WritableRaster raster = tile.getRaster();
+		for (int row = 0; row < h; row++)
+			for (int col = 0; col < w; col++)
+				if (ip.get(x + col, y + row) != 0) raster.setSample(col, row, 0, 1);
+		return tile;
+	}
+
+	/**
+	 * Crops the mask, this ROI and the {@link MaskData} to the bounds of the
+	 * foreground, if they are smaller than the mask.
+	 *
+	 * @return true if the mask was cropped and written to the {@link MaskData}
+	 */
+	private boolean cropToForeground(final MaskData md) {
+		final Rectangle bounds = mask.bits().bounds();
+		// NB: An empty mask is kept as is, there is nothing to crop it to
+		if (bounds.isEmpty() || bounds.width == mask.width() && bounds
+			.height == mask.height()) return false;
+
+		final OffHeapMask cropped = mask.bits().crop(bounds);
+		synchronized (this) {
+			mask = new TiledMask(cropped);
+			if (processor != null) {
+				processor.setRoi(bounds);
+				processor = processor.crop();
+			}
+			setLocation(getXBase() + bounds.x, getYBase() + bounds.y);
+			width = cropped.width();
+			height = cropped.height();
+		}
+
+		if (bounds.x != 0) md.setX(getXBase());
+		if (bounds.y != 0) md.setY(getYBase());
+		md.setWidth(cropped.width());
+		md.setHeight(cropped.height());
+		md.setMask(cropped.toBytes());
+		return true;
+	}
+
+	private void repaint() {
+		final ImageCanvas canvas = ic;
+		if (canvas != null) canvas.repaint();
+	}
+
+	private synchronized MaskPyramid pyramid(final TiledMask tiles) {
+		if (pyramid == null || pyramid.mask() != tiles) pyramid = new MaskPyramid(
+			tiles);
+		return pyramid;
+	}
+
+	private static IndexColorModel colorModel(final int background) {
+		final int foreground = Color.WHITE.getRGB();
+		return new IndexColorModel(1, 2, new int[] { background, foreground }, 0,
+			true, -1, DataBuffer.TYPE_BYTE);
 	}
 
 }
@@ -0,0 +1,282 @@
+/*-
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2018 - 2023 Open Microscopy Environment:
+ * 	- Board of Regents of the University of Wisconsin-Madison
+ * 	- Glencoe Software, Inc.
+ * 	- University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package net.imagej.omero.legacy.mask;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+
+/**
+ * A binary mask whose pixels are stored outside of the Java heap.
+ * <p>
+ * The pixels are bit-packed in the same layout as OMERO mask bytes: row-major,
+ * one bit per pixel, most significant bit first, with rows <em>not</em> padded
+ * to whole bytes. Small masks are backed by a direct buffer; large masks by a
+ * memory-mapped temporary file, so even whole-slide masks do not count against
+ * the Java heap.
+ * </p>
+ */
+public class OffHeapMask {
+
+	/** Masks with more bytes than this are backed by a memory-mapped file. */
+	private static final long MAP_THRESHOLD = 16L << 20;
+
+	private final int width;
+	private final int height;
+	private final ByteBuffer bits;
+
+	public OffHeapMask(final int width, final int height) {
+		final long size = ((long) width * height + 7) >> 3;
+		if (size > Integer.MAX_VALUE) throw new IllegalArgumentException(
+			"Mask too large: " + width + "x" + height);
+		this.width = width;
+		this.height = height;
+		bits = allocate((int) size);
+	}
+
+	/**
+	 * Creates a mask from bit-packed OMERO mask bytes.
+	 *
+	 * @param width width of the mask
+	 * @param height height of the mask
+	 * @param packed the packed bits, may be {@code null} or shorter than
+	 *          required, in which case the remaining pixels are off
+	 */
+	public static OffHeapMask fromBytes(final int width, final int height,
+		final byte[] packed)
+	{
+		final OffHeapMask mask = new OffHeapMask(width, height);
+		if (packed != null) {
+			final ByteBuffer dst = mask.bits.duplicate();
+			dst.put(packed, 0, Math.min(packed.length, dst.remaining()));
+		}
+		return mask;
+	}
+
+	/** Creates a mask which is on wherever the given processor is non-zero. */
+	public static OffHeapMask fromProcessor(final ImageProcessor ip) {
+		final OffHeapMask mask = new OffHeapMask(ip.getWidth(), ip.getHeight());
+		mask.setPixels(ip);
+		return mask;
+	}
+
+	/** Creates an independent copy of this mask. */
+	public OffHeapMask copy() {
+		final OffHeapMask copy = new OffHeapMask(width, height);
+		final ByteBuffer src = bits.duplicate();
+		src.clear();
+		copy.bits.duplicate().put(src);
+		return copy;
+	}
+
+	public int width() {
+		return width;
+	}
+
+	public int height() {
+		return height;
+	}
+
+	public boolean get(final int x, final int y) {
+		final long i = (long) y * width + x;
+		return (bits.get((int) (i >>> 3)) & (0x80 >>> (i & 7))) != 0;
+	}
+
+	public void set(final int x, final int y, final boolean on) {
+		final long i = (long) y * width + x;
+		final int index = (int) (i >>> 3);
+		final int bit = 0x80 >>> (i & 7);
+		final byte b = bits.get(index);
+		bits.put(index, (byte) (on ? b | bit : b & ~bit));
+	}
+
+	/**
+	 * Sets this mask on wherever the given processor is non-zero.
+	 *
+	 * @return true if any pixel of this mask changed
+	 */
+	public boolean setPixels(final ImageProcessor ip) {
+		if (ip.getWidth() != width || ip.getHeight() != height)
+			throw new IllegalArgumentException("Expected " + width + "x" + height +
+				" but received " + ip.getWidth() + "x" + ip.getHeight());
+		final long size = (long) width * height;
+		boolean changed = false;
+		long i = 0;
+		for (int index = 0; index < bits.capacity(); index++) {
+			final int n = (int) Math.min(8, size - i);
+			int b = 0;
+			for (int bit = 0; bit < n; bit++, i++)
+				if (ip.get((int) i) != 0) b |= 0x80 >>> bit;
+			// NB: Keep the bits after the last pixel as they are
+			final int old = bits.get(index) & 0xff;
+			b |= old & (0xff >>> n);
+			if (b == old) continue;
+			bits.put(index, (byte) b);
+			changed = true;
+		}
+		return changed;
+	}
+
+	/** Returns the packed bits, in the OMERO mask byte layout. */
+	public byte[] toBytes() {
+		final byte[] packed = new byte[bits.capacity()];
+		bits.duplicate().get(packed);
+		return packed;
+	}
+
+	/**
+	 * Copies the bits of the given region into already packed bytes of the
+	 * same size, leaving the bits outside of the region untouched.
+	 *
+	 * @param packed bytes in the OMERO mask byte layout, at least as long as
+	 *          {@link #toBytes()}
+	 * @param region the region to copy
+	 */
+	public void copyTo(final byte[] packed, final Rectangle region) {
+		if (packed.length < bits.capacity()) throw new IllegalArgumentException(
+			"Expected at least " + bits.capacity() + " bytes but received " +
+				packed.length);
+		for (int y = region.y; y < region.y + region.height; y++) {
+			final long row = (long) y * width;
+			for (int x = region.x; x < region.x + region.width; x++) {
+				final long i = row + x;
+				final int index = (int) (i >>> 3);
+				final int bit = 0x80 >>> (i & 7);
+				if ((bits.get(index) & bit) != 0) packed[index] |= bit;
+				else packed[index] &= ~bit;
+			}
+		}
+	}
+
+	/**
+	 * Returns the bounds of the pixels which are on, relative to the mask. If
+	 * no pixel is on, the returned rectangle is empty.
+	 */
+	public Rectangle bounds() {
+		final long size = (long) width * height;
+		int minX = width, minY = height, maxX = -1, maxY = -1;
+		for (int index = 0; index < bits.capacity(); index++) {
+			final int b = bits.get(index) & 0xff;
+			// NB: Most bytes of a sparse mask are empty
+			if (b == 0) continue;
+			for (int bit = 0; bit < 8; bit++) {
+				if ((b & (0x80 >>> bit)) == 0) continue;
+				final long i = ((long) index << 3) + bit;
+				if (i >= size) break;
+				final int x = (int) (i % width);
+				final int y = (int) (i / width);
+				if (x < minX) minX = x;
+				if (x > maxX) maxX = x;
+				if (y < minY) minY = y;
+				if (y > maxY) maxY = y;
+			}
+		}
+		if (maxX < 0) return new Rectangle();
+		return new Rectangle(minX, minY, maxX - minX + 1, maxY - minY + 1);
+	}
+
+	/** Creates a new mask containing the given region of this mask. */
+	public OffHeapMask crop(final Rectangle region) {
+		if (region.x < 0 || region.y < 0 || region.x + region.width > width ||
+			region.y + region.height > height) throw new IllegalArgumentException(
+				"Region " + region + " is outside of the " + width + "x" + height +
+					" mask");
+		final OffHeapMask cropped = new OffHeapMask(region.width, region.height);
+		for (int y = 0; y < region.height; y++)
+			for (int x = 0; x < region.width; x++)
+				if (get(region.x + x, region.y + y)) cropped.set(x, y, true);
+		return cropped;
+	}
+
+	/**
+	 * Creates an on-heap {@link ByteProcessor} of this mask, with 255 where
+	 * the mask is on.
+	 */
+	public ByteProcessor toProcessor() {
+		final ByteProcessor bp = new ByteProcessor(width, height);
+		for (int y = 0; y < height; y++)
+			for (int x = 0; x < width; x++)
+				if (get(x, y)) bp.set(x, y, 255);
+		return bp;
+	}
+
+	/**
+	 * Creates a small binary image of the given region, for painting.
+	 *
+	 * @param x x offset of the region within the mask
+	 * @param y y offset of the region within the mask
+	 * @param w width of the region
+	 * @param h height of the region
+	 * @param cm two color model, index 1 is used where the mask is on
+	 * @return a {@link BufferedImage#TYPE_BYTE_BINARY} image of the region
+	 */
+	public BufferedImage createTile(final int x, final int y, final int w,
+		final int h, final IndexColorModel cm)
+	{
+		final BufferedImage tile = new BufferedImage(w, h,
+			BufferedImage.TYPE_BYTE_BINARY, cm);
+		final byte[] data = ((DataBufferByte) tile.getRaster().getDataBuffer())
+			.getData();
+		final int stride = (w + 7) >> 3;
+		for (int row = 0; row < h; row++) {
+			final int offset = row * stride;
+			for (int col = 0; col < w; col++)
+				if (get(x + col, y + row)) data[offset + (col >> 3)] |= 0x80 >>> (col &
+					7);
+		}
+		return tile;
+	}
+
+	// -- Helper methods --
+
+	private static ByteBuffer allocate(final int size) {
+		if (size <= MAP_THRESHOLD) return ByteBuffer.allocateDirect(size);
+		try {
+			final File file = File.createTempFile("omero-mask", ".bits");
+			try (final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+					final FileChannel channel = raf.getChannel())
+			{
+				// NB: The mapping stays valid after the channel is closed
+				return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			}
+			finally {
+				if (!file.delete()) file.deleteOnExit();
+			}
+		}
+		catch (final IOException exc) {
+			return ByteBuffer.allocateDirect(size);
+		}
+	}
+}
@@ -0,0 +1,278 @@
+/*-
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2018 - 2023 Open Microscopy Environment:
+ * 	- Board of Regents of the University of Wisconsin-Madison
+ * 	- Glencoe Software, Inc.
+ * 	- University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package net.imagej.omero.legacy.mask;
+
+import java.awt.Shape;
+import java.awt.geom.PathIterator;
+import java.util.Arrays;
+
+import net.imglib2.RealPoint;
+import net.imglib2.roi.RealMaskRealInterval;
+
+import omero.gateway.model.MaskData;
+
+/**
+ * Rasterizes a {@link java.awt.Shape} into {@link MaskData} with a scanline
+ * sweep over its flattened outline.
+ * <p>
+ * Sampling a {@link RealMaskRealInterval} at every pixel of its bounding box
+ * costs the area of the box times the cost of a single test. Here the
+ * outline is walked once; pixels are classified from the edges crossing
+ * their row, and only pixels close to an edge are tested against the mask.
+ * As such the result is the same as sampling the mask, as long as the shape
+ * and the mask agree on pixels further than {@link #MARGIN} from the outline.
+ * </p>
+ */
+public final class ShapeRasterizer {
+
+	/** Maximum distance between a curve and its flattened outline. */
+	private static final double FLATNESS = 0.01;
+
+	/** Pixels this close to the outline are tested against the mask. */
+	private static final double MARGIN = 1;
+
+	private ShapeRasterizer() {
+		// NB: prevent instantiation of utility class
+	}
+
+	/**
+	 * Creates {@link MaskData} for the given mask, sampled at the integer
+	 * positions of its smallest containing interval.
+	 *
+	 * @param shape the outline of the mask, in the same coordinates
+	 * @param mask the mask, which decides pixels close to the outline
+	 */
+	public static MaskData rasterize(final Shape shape,
+		final RealMaskRealInterval mask)
+	{
+		final long minX = (long) Math.floor(mask.realMin(0));
+		final long minY = (long) Math.floor(mask.realMin(1));
+		final long w = (long) Math.ceil(mask.realMax(0)) - minX + 1;
+		final long h = (long) Math.ceil(mask.realMax(1)) - minY + 1;
+		if (w * h > (long) Integer.MAX_VALUE << 3)
+			throw new IllegalArgumentException("Mask too large: " + w + "x" + h);
+
+		final PathIterator path = shape.getPathIterator(null, FLATNESS);
+		final boolean evenOdd = path.getWindingRule() == PathIterator.WIND_EVEN_ODD;
+		final Edges edges = Edges.of(path);
+
+		final byte[] packed = new byte[(int) ((w * h + 7) >> 3)];
+		final boolean[] uncertain = new boolean[(int) w];
+		final RealPoint point = new RealPoint(2);
+		double[] crossings = new double[16];
+		int[] directions = new int[16];
+
+		int next = 0;
+		int active = 0;
+		final int[] activeEdges = new int[edges.size];
+		for (long row = 0; row < h; row++) {
+			final double y = minY + row;
+
+			// Update the edges within the margin of this row
+			int kept = 0;
+			for (int a = 0; a < active; a++)
+				if (edges.maxY[activeEdges[a]] >= y - MARGIN) activeEdges[kept++] =
+					activeEdges[a];
+			active = kept;
+			while (next < edges.size && edges.minY[next] <= y + MARGIN)
+				activeEdges[active++] = next++;
+
+			// Find crossings and mark pixels close to an edge
+			Arrays.fill(uncertain, false);
+			int n = 0;
+			for (int a = 0; a < active; a++) {
+				final int e = activeEdges[a];
+				if (edges.maxY[e] < y - MARGIN) continue;
+				final double x0 = edges.x0[e], y0 = edges.y0[e];
+				final double x1 = edges.x1[e], y1 = edges.y1[e];
+				markUncertain(uncertain, minX, x0, y0, x1, y1, y);
+				if (y0 <= y && y < y1 || y1 <= y && y < y0) {
+					if (n == crossings.length) {
+						crossings = Arrays.copyOf(crossings, n * 2);
+						directions = Arrays.copyOf(directions, n * 2);
+					}
+					crossings[n] = x0 + (y - y0) * (x1 - x0) / (y1 - y0);
+					directions[n++] = y1 > y0 ? 1 : -1;
+				}
+			}
+			sort(crossings, directions, n);
+
+			// Sweep the row
+			int c = 0;
+			int winding = 0;
+			for (int col = 0; col < w; col++) {
+				final double x = minX + col;
+				while (c < n && crossings[c] < x)
+					winding += directions[c++];
+				final boolean on;
+				if (uncertain[col]) {
+					point.setPosition(x, 0);
+					point.setPosition(y, 1);
+					on = mask.test(point);
+				}
+				else on = evenOdd ? (c & 1) != 0 : winding != 0;
+				if (on) {
+					final long i = row * w + col;
+					packed[(int) (i >>> 3)] |= 0x80 >>> (i & 7);
+				}
+			}
+		}
+		return new MaskData(minX, minY, w, h, packed);
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * Marks the pixels of the row at {@code y} which are within the margin of
+	 * the given edge.
+	 */
+	private static void markUncertain(final boolean[] uncertain,
+		final long minX, final double x0, final double y0, final double x1,
+		final double y1, final double y)
+	{
+		// Clip the edge to the band [y - MARGIN, y + MARGIN]
+		double xa = x0, xb = x1;
+		if (y0 != y1) {
+			final double ta = clamp((y - MARGIN - y0) / (y1 - y0));
+			final double tb = clamp((y + MARGIN - y0) / (y1 - y0));
+			xa = x0 + ta * (x1 - x0);
+			xb = x0 + tb * (x1 - x0);
+		}
+		final long from = Math.max(0, (long) Math.floor(Math.min(xa, xb) -
+			MARGIN) - minX);
+		final long to = Math.min(uncertain.length - 1, (long) Math.ceil(Math.max(
+			xa, xb) + MARGIN) - minX);
+		for (long col = from; col <= to; col++)
+			uncertain[(int) col] = true;
+	}
+
+	private static double clamp(final double t) {
+		return t < 0 ? 0 : t > 1 ? 1 : t;
+	}
+
+	/** Insertion sort of the crossings, rows rarely have many. */
+	private static void sort(final double[] crossings, final int[] directions,
+		final int n)
+	{
+		for (int i = 1; i < n; i++) {
+			final double x = crossings[i];
+			final int d = directions[i];
+			int j = i - 1;
+			while (j >= 0 && crossings[j] > x) {
+				crossings[j + 1] = crossings[j];
+				directions[j + 1] = directions[j];
+				j--;
+			}
+			crossings[j + 1] = x;
+			directions[j + 1] = d;
+		}
+	}
+
+	// -- Helper classes --
+
+	/** The edges of a flattened outline, sorted by their minimum y. */
+	private static final class Edges {
+
+		private int size;
+		private double[] x0 = new double[64], y0 = new double[64];
+		private double[] x1 = new double[64], y1 = new double[64];
+		private double[] minY, maxY;
+
+		private static Edges of(final PathIterator path) {
+			final Edges edges = new Edges();
+			final double[] coords = new double[6];
+			double startX = 0, startY = 0, x = 0, y = 0;
+			for (; !path.isDone(); path.next()) {
+				switch (path.currentSegment(coords)) {
+					case PathIterator.SEG_MOVETO:
+						// NB: Open subpaths are implicitly closed when filled
+						edges.add(x, y, startX, startY);
+						startX = x = coords[0];
+						startY = y = coords[1];
+						break;
+					case PathIterator.SEG_LINETO:
+						edges.add(x, y, coords[0], coords[1]);
+						x = coords[0];
+						y = coords[1];
+						break;
+					case PathIterator.SEG_CLOSE:
+						edges.add(x, y, startX, startY);
+						x = startX;
+						y = startY;
+						break;
+					default:
+						throw new IllegalArgumentException(
+							"Path is not flattened, segment type: " + path.currentSegment(
+								coords));
+				}
+			}
+			edges.add(x, y, startX, startY);
+			edges.sort();
+			return edges;
+		}
+
+		private void add(final double ax, final double ay, final double bx,
+			final double by)
+		{
+			if (ax == bx && ay == by) return;
+			if (size == x0.length) {
+				x0 = Arrays.copyOf(x0, size * 2);
+				y0 = Arrays.copyOf(y0, size * 2);
+				x1 = Arrays.copyOf(x1, size * 2);
+				y1 = Arrays.copyOf(y1, size * 2);
+			}
+			x0[size] = ax;
+			y0[size] = ay;
+			x1[size] = bx;
+			y1[size] = by;
+			size++;
+		}
+
+		private void sort() {
+			final Integer[] order = new Integer[size];
+			for (int i = 0; i < size; i++)
+				order[i] = i;
+			Arrays.sort(order, (a, b) -> Double.compare(Math.min(y0[a], y1[a]), Math
+				.min(y0[b], y1[b])));
+			final double[][] sorted = new double[4][size];
+			minY = new double[size];
+			maxY = new double[size];
+			for (int i = 0; i < size; i++) {
+				final int o = order[i];
+				sorted[0][i] = x0[o];
+				sorted[1][i] = y0[o];
+				sorted[2][i] = x1[o];
+				sorted[3][i] = y1[o];
+				minY[i] = Math.min(y0[o], y1[o]);
+				maxY[i] = Math.max(y0[o], y1[o]);
+			}
+			x0 = sorted[0];
+			y0 = sorted[1];
+			x1 = sorted[2];
+			y1 = sorted[3];
+		}
+	}
+}
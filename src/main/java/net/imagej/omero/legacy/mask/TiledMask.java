@@ -0,0 +1,247 @@
+/*-
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2018 - 2023 Open Microscopy Environment:
+ * 	- Board of Regents of the University of Wisconsin-Madison
+ * 	- Glencoe Software, Inc.
+ * 	- University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package net.imagej.omero.legacy.mask;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A tiled view of an {@link OffHeapMask}.
+ * <p>
+ * Tiles are decoded from the packed bits on demand, one byte per pixel, and
+ * kept in a bounded cache. Modified tiles are marked dirty; they are written
+ * back to the packed bits when evicted or {@link #flush() flushed}, and the
+ * regions they cover are reported so only those need to be re-encoded.
+ * </p>
+ */
+public class TiledMask {
+
+	/** Width and height of the tiles, in pixels. */
+	public static final int TILE_SIZE = 256;
+
+	/** Maximum number of decoded tiles kept in memory (at most 4 MiB). */
+	private static final int MAX_TILES = 64;
+
+	private final OffHeapMask bits;
+	private final Map<Long, Tile> tiles;
+	private final Set<Long> modified = new HashSet<>();
+	private long modCount;
+
+	public TiledMask(final OffHeapMask bits) {
+		this.bits = bits;
+		tiles = new LinkedHashMap<Long, Tile>(16, 0.75f, true) {
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<Long, Tile> eldest) {
+				if (size() <= MAX_TILES) return false;
+				eldest.getValue().writeBack();
+				return true;
+			}
+		};
+	}
+
+	/** Returns the packed bits backing this mask. */
+	public OffHeapMask bits() {
+		return bits;
+	}
+
+	public int width() {
+		return bits.width();
+	}
+
+	public int height() {
+		return bits.height();
+	}
+
+	public synchronized boolean get(final int x, final int y) {
+		final Tile tile = tiles.get(key(x / TILE_SIZE, y / TILE_SIZE));
+		return tile == null ? bits.get(x, y) : tile.get(x, y);
+	}
+
+	public synchronized void set(final int x, final int y, final boolean on) {
+		final Tile tile = tile(x / TILE_SIZE, y / TILE_SIZE);
+		tile.set(x, y, on);
+		modified.add(tile.key);
+		modCount++;
+	}
+
+	/**
+	 * Reads a row of pixels, one byte per pixel which is 1 where the mask is
+	 * on, including modifications which have not been flushed.
+	 *
+	 * @param y the row
+	 * @param row receives the pixels, at least {@link #width()} long
+	 */
+	public synchronized void readRow(final int y, final byte[] row) {
+		final int ty = y / TILE_SIZE;
+		for (int x0 = 0; x0 < width(); x0 += TILE_SIZE) {
+			final Tile tile = tiles.get(key(x0 / TILE_SIZE, ty));
+			final int end = Math.min(width(), x0 + TILE_SIZE);
+			for (int x = x0; x < end; x++)
+				row[x] = (byte) ((tile == null ? bits.get(x, y) : tile.get(x, y)) ? 1
+					: 0);
+		}
+	}
+
+	/**
+	 * Creates an independent copy of this mask. The copy reports the same
+	 * regions as modified on its next {@link #flush()}.
+	 */
+	public synchronized TiledMask copy() {
+		for (final Tile tile : tiles.values())
+			tile.writeBack();
+		final TiledMask copy = new TiledMask(bits.copy());
+		copy.modified.addAll(modified);
+		copy.modCount = modCount;
+		return copy;
+	}
+
+	/** Returns a counter which is incremented whenever a pixel is set. */
+	public synchronized long modCount() {
+		return modCount;
+	}
+
+	/** Returns true if any pixels were modified since the last flush. */
+	public synchronized boolean isModified() {
+		return !modified.isEmpty();
+	}
+
+	/**
+	 * Returns an image of the given tile for painting. The image shares the
+	 * decoded pixels of the tile.
+	 *
+	 * @param tx column of the tile
+	 * @param ty row of the tile
+	 * @param cm two color model, index 1 is used where the mask is on; the
+	 *          image is recreated if a different instance is passed
+	 */
+	public synchronized BufferedImage tileImage(final int tx, final int ty,
+		final IndexColorModel cm)
+	{
+		return tile(tx, ty).image(cm);
+	}
+
+	/**
+	 * Writes all dirty tiles back to the packed bits.
+	 *
+	 * @return the regions which were modified since the last flush
+	 */
+	public synchronized List<Rectangle> flush() {
+		final List<Rectangle> regions = new ArrayList<>(modified.size());
+		for (final long key : modified) {
+			final Tile tile = tiles.get(key);
+			if (tile != null) tile.writeBack();
+			regions.add(bounds(key));
+		}
+		modified.clear();
+		return regions;
+	}
+
+	// -- Helper methods --
+
+	private Tile tile(final int tx, final int ty) {
+		final long key = key(tx, ty);
+		Tile tile = tiles.get(key);
+		if (tile == null) {
+			tile = new Tile(key);
+			tiles.put(key, tile);
+		}
+		return tile;
+	}
+
+	private static long key(final int tx, final int ty) {
+		return ((long) ty << 32) | (tx & 0xffffffffL);
+	}
+
+	private Rectangle bounds(final long key) {
+		final int x = (int) key * TILE_SIZE;
+		final int y = (int) (key >>> 32) * TILE_SIZE;
+		return new Rectangle(x, y, Math.min(TILE_SIZE, width() - x), Math.min(
+			TILE_SIZE, height() - y));
+	}
+
+	// -- Helper classes --
+
+	private final class Tile {
+
+		private final long key;
+		private final Rectangle bounds;
+		private final byte[] pixels;
+		private boolean dirty;
+		private BufferedImage image;
+
+		private Tile(final long key) {
+			this.key = key;
+			bounds = bounds(key);
+			pixels = new byte[bounds.width * bounds.height];
+			for (int row = 0; row < bounds.height; row++) {
+				final int offset = row * bounds.width;
+				for (int col = 0; col < bounds.width; col++)
+					if (bits.get(bounds.x + col, bounds.y + row)) pixels[offset + col] = 1;
+			}
+		}
+
+		private boolean get(final int x, final int y) {
+			return pixels[(y - bounds.y) * bounds.width + x - bounds.x] != 0;
+		}
+
+		private void set(final int x, final int y, final boolean on) {
+			pixels[(y - bounds.y) * bounds.width + x - bounds.x] = (byte) (on ? 1
+				: 0);
+			dirty = true;
+		}
+
+		private BufferedImage image(final IndexColorModel cm) {
+			if (image == null || image.getColorModel() != cm) {
+				final WritableRaster raster = Raster.createInterleavedRaster(
+					new DataBufferByte(pixels, pixels.length), bounds.width,
+					bounds.height, bounds.width, 1, new int[] { 0 }, null);
+				image = new BufferedImage(cm, raster, false, null);
+			}
+			return image;
+		}
+
+		private void writeBack() {
+			if (!dirty) return;
+			for (int row = 0; row < bounds.height; row++) {
+				final int offset = row * bounds.width;
+				for (int col = 0; col < bounds.width; col++)
+					bits.set(bounds.x + col, bounds.y + row, pixels[offset + col] != 0);
+			}
+			dirty = false;
+		}
+	}
+}
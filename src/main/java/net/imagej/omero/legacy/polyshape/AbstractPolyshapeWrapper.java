@@ -0,0 +1,143 @@
+/*-
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2018 - 2023 Open Microscopy Environment:
+ * 	- Board of Regents of the University of Wisconsin-Madison
+ * 	- Glencoe Software, Inc.
+ * 	- University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package net.imagej.omero.legacy.polyshape;
+
+import java.awt.Graphics;
+import java.awt.geom.Rectangle2D;
+
+import ij.gui.PolygonRoi;
+import ij.gui.Roi;
+import ij.process.FloatPolygon;
+
+/**
+ * Base class for the {@link PolygonRoi}s wrapping OMERO polygons and
+ * polylines.
+ * <p>
+ * When painted as part of an overlay at a magnification below 1, the outline
+ * is drawn from a simplified set of vertices. Each zoom level {@code k},
+ * covering magnifications down to {@code 2^-(k+1)}, has its own set,
+ * simplified with a tolerance of half a screen pixel. The sets are computed on
+ * first use, relative to the location of this ROI, and recomputed once the
+ * vertices are edited. They are drawn by {@link PolygonRoi} itself, so the
+ * stroke, fill and overlay settings of this ROI apply as usual.
+ * </p>
+ */
+public abstract class AbstractPolyshapeWrapper extends PolygonRoi {
+
+	/** Outlines with fewer vertices are always drawn as they are. */
+	private static final int MIN_VERTICES = 32;
+
+	/** Coarsest zoom level with its own set of vertices. */
+	private static final int MAX_LEVEL = 16;
+
+	private final Level[] levels = new Level[MAX_LEVEL + 1];
+
+	/** Incremented whenever a vertex is moved. */
+	private long modCount;
+
+	// NB: Vertices are inserted and deleted by replacing the coordinate arrays
+	// or changing their number, which are compared in constant time
+	private long levelsModCount;
+	private int levelsPoints;
+	private Object levelsArray;
+
+	public AbstractPolyshapeWrapper(final FloatPolygon vertices,
+		final int type)
+	{
+		super(vertices, type);
+	}
+
+	@Override
+	public void drawOverlay(final Graphics g) {
+		final double mag = ic == null ? 1 : ic.getMagnification();
+		if (mag >= 1 || nPoints < MIN_VERTICES || isSplineFit()) {
+			super.drawOverlay(g);
+			return;
+		}
+
+		final int level = Math.min(MAX_LEVEL, (int) Math.floor(Math.log(1 / mag) /
+			Math.log(2)));
+		final Level simplified = level(level);
+		simplified.roi.copyAttributes(this);
+		simplified.roi.setLocation(getXBase() + simplified.x, getYBase() +
+			simplified.y);
+		simplified.roi.setImage(imp);
+		simplified.roi.drawOverlay(g);
+	}
+
+	@Override
+	protected void moveHandle(final int sx, final int sy) {
+		super.moveHandle(sx, sy);
+		synchronized (this) {
+			modCount++;
+		}
+	}
+
+	// -- Helper methods --
+
+	/** Returns the simplified outline to draw at the given zoom level. */
+	private synchronized Level level(final int level) {
+		final Object array = xpf != null ? xpf : xp;
+		if (modCount != levelsModCount || nPoints != levelsPoints ||
+			array != levelsArray)
+		{
+			for (int i = 0; i <= MAX_LEVEL; i++)
+				levels[i] = null;
+			levelsModCount = modCount;
+			levelsPoints = nPoints;
+			levelsArray = array;
+		}
+		if (levels[level] == null) levels[level] = new Level(level);
+		return levels[level];
+	}
+
+	// -- Helper classes --
+
+	/** A simplified copy of the outline, relative to the location of the ROI. */
+	private final class Level {
+
+		private final PolygonRoi roi;
+		private final double x;
+		private final double y;
+
+		private Level(final int level) {
+			final FloatPolygon vertices = getFloatPolygon();
+			final boolean closed = getType() == Roi.POLYGON;
+			final FloatPolygon relative = Polyshapes.simplify(vertices, 0.5 *
+				(1 << level), closed).duplicate();
+			final double x0 = getXBase();
+			final double y0 = getYBase();
+			for (int i = 0; i < relative.npoints; i++) {
+				relative.xpoints[i] -= x0;
+				relative.ypoints[i] -= y0;
+			}
+			roi = new PolygonRoi(relative, closed ? Roi.POLYGON : Roi.POLYLINE);
+			final Rectangle2D bounds = relative.getFloatBounds();
+			x = bounds.getX();
+			y = bounds.getY();
+		}
+	}
+}
@@ -0,0 +1,64 @@
+/*-
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2018 - 2023 Open Microscopy Environment:
+ * 	- Board of Regents of the University of Wisconsin-Madison
+ * 	- Glencoe Software, Inc.
+ * 	- University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package net.imagej.omero.legacy.polyshape;
+
+import ij.gui.PolygonRoi;
+import ij.gui.Roi;
+
+import net.imagej.legacy.convert.roi.MaskPredicateWrapper;
+import net.imagej.omero.roi.polyshape.OMEROPolyline;
+
+/**
+ * Wraps an {@link OMEROPolyline} as a {@link PolygonRoi}.
+ * <p>
+ * The vertices are transferred directly between the OMERO points and the
+ * {@link PolygonRoi} coordinate arrays, see {@link Polyshapes}. At low
+ * magnification it is drawn from simplified vertices, see
+ * {@link AbstractPolyshapeWrapper}.
+ * </p>
+ */
+public class OMEROPolylineWrapper extends AbstractPolyshapeWrapper implements
+	MaskPredicateWrapper<OMEROPolyline>
+{
+
+	private final OMEROPolyline source;
+
+	public OMEROPolylineWrapper(final OMEROPolyline source) {
+		super(Polyshapes.getPoints(source.getShape()), Roi.POLYLINE);
+		this.source = source;
+	}
+
+	@Override
+	public OMEROPolyline getSource() {
+		return source;
+	}
+
+	@Override
+	public void synchronize() {
+		Polyshapes.setPoints(source.getShape(), getFloatPolygon());
+	}
+
+}
@@ -0,0 +1,363 @@
+/*-
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2018 - 2023 Open Microscopy Environment:
+ * 	- Board of Regents of the University of Wisconsin-Madison
+ * 	- Glencoe Software, Inc.
+ * 	- University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package net.imagej.omero.legacy.polyshape;
+
+import java.awt.geom.Point2D;
+import java.util.Arrays;
+import java.util.List;
+
+import ij.process.FloatPolygon;
+
+import omero.RString;
+import omero.gateway.model.PolygonData;
+import omero.gateway.model.PolylineData;
+import omero.model.Polygon;
+import omero.model.Polyline;
+
+/**
+ * Utility methods for transferring vertices between ImageJ 1.x
+ * {@link FloatPolygon}s and the points of OMERO {@link PolygonData} and
+ * {@link PolylineData}.
+ * <p>
+ * OMERO stores the vertices as a single string of the form
+ * {@code "x1,y1 x2,y2 ..."}. These methods read and write that string directly
+ * into primitive coordinate arrays, rather than going through a list of
+ * {@link Point2D} objects.
+ * </p>
+ */
+public final class Polyshapes {
+
+	/** Powers of ten which are exactly representable as doubles. */
+	private static final double[] POW10 = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6,
+		1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19,
+		1e20, 1e21, 1e22 };
+
+	private Polyshapes() {
+		// NB: prevent instantiation of utility class
+	}
+
+	/** Returns the vertices of the given {@link PolygonData}. */
+	public static FloatPolygon getPoints(final PolygonData polygon) {
+		final RString points = ((Polygon) polygon.asIObject()).getPoints();
+		final FloatPolygon fp = decode(points == null ? null : points.getValue());
+		return fp == null ? toFloatPolygon(polygon.getPoints()) : fp;
+	}
+
+	/** Returns the vertices of the given {@link PolylineData}. */
+	public static FloatPolygon getPoints(final PolylineData polyline) {
+		final RString points = ((Polyline) polyline.asIObject()).getPoints();
+		final FloatPolygon fp = decode(points == null ? null : points.getValue());
+		return fp == null ? toFloatPolygon(polyline.getPoints()) : fp;
+	}
+
+	/**
+	 * Sets the vertices of the given {@link PolygonData}. If the vertices are
+	 * unchanged, the shape is left untouched, even if its points are written
+	 * in a different form.
+	 */
+	public static void setPoints(final PolygonData polygon,
+		final FloatPolygon vertices)
+	{
+		final Polygon p = (Polygon) polygon.asIObject();
+		if (equal(decode(value(p.getPoints())), vertices)) return;
+		p.setPoints(omero.rtypes.rstring(encode(vertices)));
+		polygon.setDirty(true);
+	}
+
+	/**
+	 * Sets the vertices of the given {@link PolylineData}. If the vertices are
+	 * unchanged, the shape is left untouched, even if its points are written
+	 * in a different form.
+	 */
+	public static void setPoints(final PolylineData polyline,
+		final FloatPolygon vertices)
+	{
+		final Polyline p = (Polyline) polyline.asIObject();
+		if (equal(decode(value(p.getPoints())), vertices)) return;
+		p.setPoints(omero.rtypes.rstring(encode(vertices)));
+		polyline.setDirty(true);
+	}
+
+	/**
+	 * Encodes the given vertices in the OMERO points format. Coordinates are
+	 * written with double precision, so they decode to exactly the same values;
+	 * whole numbers are written without a fraction.
+	 *
+	 * @param vertices the vertices to encode
+	 * @return the vertices as {@code "x1,y1 x2,y2 ..."}
+	 */
+	public static String encode(final FloatPolygon vertices) {
+		final float[] x = vertices.xpoints;
+		final float[] y = vertices.ypoints;
+		final int n = vertices.npoints;
+		// NB: ~16 characters per vertex is plenty for typical image coordinates
+		final StringBuilder sb = new StringBuilder(n * 16);
+		for (int i = 0; i < n; i++) {
+			if (i > 0) sb.append(' ');
+			append(sb, x[i]).append(',');
+			append(sb, y[i]);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Decodes vertices in the OMERO points format.
+	 *
+	 * @param points vertices as {@code "x1,y1 x2,y2 ..."}
+	 * @return the decoded vertices, or {@code null} if {@code points} is
+	 *         {@code null} or not in the expected format (e.g. the legacy
+	 *         {@code "points[...]"} format)
+	 */
+	public static FloatPolygon decode(final String points) {
+		if (points == null || points.indexOf('[') >= 0) return null;
+
+		// NB: Every vertex has exactly one comma
+		int n = 0;
+		for (int i = 0; i < points.length(); i++)
+			if (points.charAt(i) == ',') n++;
+
+		final float[] x = new float[n];
+		final float[] y = new float[n];
+		final int len = points.length();
+		int pos = 0;
+		for (int v = 0; v < n; v++) {
+			pos = skipSeparators(points, pos, len);
+			int end = tokenEnd(points, pos, len);
+			if (end == pos) return null;
+			x[v] = (float) parse(points, pos, end);
+
+			pos = skipSeparators(points, end, len);
+			end = tokenEnd(points, pos, len);
+			if (end == pos) return null;
+			y[v] = (float) parse(points, pos, end);
+			pos = end;
+		}
+		return new FloatPolygon(x, y, n);
+	}
+
+	/**
+	 * Simplifies the given vertices with the Douglas-Peucker algorithm. Only
+	 * vertices which are further than the tolerance from the simplified
+	 * outline are kept.
+	 *
+	 * @param vertices the vertices to simplify
+	 * @param tolerance the tolerance, in pixels; if not positive the vertices
+	 *          are returned as is
+	 * @param closed true if the last vertex connects back to the first one
+	 * @return the simplified vertices, or {@code vertices} if none were removed
+	 */
+	public static FloatPolygon simplify(final FloatPolygon vertices,
+		final double tolerance, final boolean closed)
+	{
+		final int n = vertices.npoints;
+		if (tolerance <= 0 || n < 3) return vertices;
+		final double tolerance2 = tolerance * tolerance;
+		final boolean[] keep = new boolean[n];
+		keep[0] = true;
+		if (closed) {
+			// NB: Split the ring at the vertex furthest from the first one, the
+			// index n stands for the first vertex again
+			int far = 1;
+			double max = -1;
+			for (int i = 1; i < n; i++) {
+				final double dx = vertices.xpoints[i] - vertices.xpoints[0];
+				final double dy = vertices.ypoints[i] - vertices.ypoints[0];
+				if (dx * dx + dy * dy > max) {
+					max = dx * dx + dy * dy;
+					far = i;
+				}
+			}
+			keep[far] = true;
+			simplify(vertices, keep, 0, far, tolerance2);
+			simplify(vertices, keep, far, n, tolerance2);
+		}
+		else {
+			keep[n - 1] = true;
+			simplify(vertices, keep, 0, n - 1, tolerance2);
+		}
+
+		int count = 0;
+		for (final boolean k : keep)
+			if (k) count++;
+		if (count == n) return vertices;
+		final float[] x = new float[count];
+		final float[] y = new float[count];
+		for (int i = 0, j = 0; i < n; i++) {
+			if (!keep[i]) continue;
+			x[j] = vertices.xpoints[i];
+			y[j++] = vertices.ypoints[i];
+		}
+		return new FloatPolygon(x, y, count);
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * Marks the vertices between {@code first} and {@code last} which are kept.
+	 * Uses an explicit stack, since outlines traced pixel by pixel can be too
+	 * long to recurse over.
+	 */
+	private static void simplify(final FloatPolygon vertices,
+		final boolean[] keep, final int first, final int last,
+		final double tolerance2)
+	{
+		final int n = vertices.npoints;
+		int[] stack = new int[64];
+		int size = 0;
+		stack[size++] = first;
+		stack[size++] = last;
+		while (size > 0) {
+			final int b = stack[--size];
+			final int a = stack[--size];
+			if (b - a < 2) continue;
+			final double ax = vertices.xpoints[a], ay = vertices.ypoints[a];
+			final double bx = vertices.xpoints[b % n], by = vertices.ypoints[b % n];
+			int furthest = -1;
+			double max = tolerance2;
+			for (int i = a + 1; i < b; i++) {
+				final double d = segmentDistance2(vertices.xpoints[i],
+					vertices.ypoints[i], ax, ay, bx, by);
+				if (d > max) {
+					max = d;
+					furthest = i;
+				}
+			}
+			if (furthest < 0) continue;
+			keep[furthest] = true;
+			if (size + 4 > stack.length) stack = Arrays.copyOf(stack, stack.length *
+				2);
+			stack[size++] = a;
+			stack[size++] = furthest;
+			stack[size++] = furthest;
+			stack[size++] = b;
+		}
+	}
+
+	/** Returns the squared distance of (px, py) to the segment (a, b). */
+	private static double segmentDistance2(final double px, final double py,
+		final double ax, final double ay, final double bx, final double by)
+	{
+		final double dx = bx - ax;
+		final double dy = by - ay;
+		final double length2 = dx * dx + dy * dy;
+		double t = length2 == 0 ? 0 : ((px - ax) * dx + (py - ay) * dy) / length2;
+		t = t < 0 ? 0 : t > 1 ? 1 : t;
+		final double ex = ax + t * dx - px;
+		final double ey = ay + t * dy - py;
+		return ex * ex + ey * ey;
+	}
+
+	/** Checks if the given vertices have exactly the same coordinates. */
+	private static boolean equal(final FloatPolygon a, final FloatPolygon b) {
+		if (a == null || a.npoints != b.npoints) return false;
+		for (int i = 0; i < a.npoints; i++)
+			if (a.xpoints[i] != b.xpoints[i] || a.ypoints[i] != b.ypoints[i])
+				return false;
+		return true;
+	}
+
+	private static StringBuilder append(final StringBuilder sb, final float v) {
+		if (v == (long) v) return sb.append((long) v);
+		return sb.append((double) v);
+	}
+
+	private static String value(final RString s) {
+		return s == null ? null : s.getValue();
+	}
+
+	private static FloatPolygon toFloatPolygon(
+		final List<Point2D.Double> points)
+	{
+		final int n = points == null ? 0 : points.size();
+		final float[] x = new float[n];
+		final float[] y = new float[n];
+		for (int i = 0; i < n; i++) {
+			final Point2D.Double p = points.get(i);
+			x[i] = (float) p.x;
+			y[i] = (float) p.y;
+		}
+		return new FloatPolygon(x, y, n);
+	}
+
+	private static int skipSeparators(final String s, int pos, final int len) {
+		while (pos < len) {
+			final char c = s.charAt(pos);
+			if (c != ',' && !Character.isWhitespace(c)) break;
+			pos++;
+		}
+		return pos;
+	}
+
+	private static int tokenEnd(final String s, int pos, final int len) {
+		while (pos < len) {
+			final char c = s.charAt(pos);
+			if (c == ',' || Character.isWhitespace(c)) break;
+			pos++;
+		}
+		return pos;
+	}
+
+	/**
+	 * Parses the number in {@code s[start, end)}. Plain decimals with up to 15
+	 * significant digits are parsed without allocating; since both the
+	 * mantissa and the power of ten are exact doubles the result is correctly
+	 * rounded. Anything else is delegated to {@link Double#parseDouble}.
+	 */
+	private static double parse(final String s, final int start,
+		final int end)
+	{
+		int i = start;
+		boolean negative = false;
+		if (s.charAt(i) == '-' || s.charAt(i) == '+') {
+			negative = s.charAt(i) == '-';
+			i++;
+		}
+		long mantissa = 0;
+		int digits = 0;
+		int scale = 0;
+		boolean fraction = false;
+		for (; i < end; i++) {
+			final char c = s.charAt(i);
+			if (c == '.' && !fraction) {
+				fraction = true;
+				continue;
+			}
+			if (c < '0' || c > '9') break;
+			if (mantissa == 0 && c == '0') {
+				// NB: leading zeros aren't significant
+				if (fraction) scale++;
+				continue;
+			}
+			if (++digits > 15) break;
+			mantissa = mantissa * 10 + (c - '0');
+			if (fraction) scale++;
+		}
+		if (i != end || digits > 15 || scale >= POW10.length) return Double
+			.parseDouble(s.substring(start, end));
+		final double value = mantissa / POW10[scale];
+		return negative ? -value : value;
+	}
+}
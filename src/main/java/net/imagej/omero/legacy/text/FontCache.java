@@ -0,0 +1,134 @@
+/*-
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2018 - 2023 Open Microscopy Environment:
+ * 	- Board of Regents of the University of Wisconsin-Madison
+ * 	- Glencoe Software, Inc.
+ * 	- University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package net.imagej.omero.legacy.text;
+
+import java.awt.Font;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import ome.model.units.BigResult;
+import omero.gateway.model.ShapeSettingsData;
+import omero.model.Length;
+import omero.model.enums.UnitsLength;
+
+/**
+ * Interns {@link Font}s by family, size and style. Text shapes typically share
+ * a handful of fonts, so sharing instances avoids creating (and measuring) a
+ * new {@link Font} for every label.
+ */
+final class FontCache {
+
+	private static final Map<Key, Font> FONTS = new ConcurrentHashMap<>();
+
+	private FontCache() {
+		// NB: prevent instantiation of utility class
+	}
+
+	/**
+	 * Returns the shared {@link Font} described by the given OMERO shape
+	 * settings.
+	 *
+	 * @param settings the shape settings of an OMERO text shape
+	 * @return the shared {@link Font} instance
+	 */
+	public static Font get(final ShapeSettingsData settings) {
+		final String family = settings.getFontFamily();
+		final Integer size = fontSize(settings);
+		if (family == null || size == null) return intern(settings.getFont());
+
+		final Key key = new Key(family, style(settings.getFontStyle()), size);
+		return FONTS.computeIfAbsent(key, k -> new Font(k.family, k.style,
+			k.size));
+	}
+
+	/**
+	 * Returns the shared {@link Font} with the same family, size and style as
+	 * the given {@link Font}.
+	 *
+	 * @param font the font to intern
+	 * @return the shared {@link Font} instance, or {@code font} if it cannot be
+	 *         shared
+	 */
+	public static Font intern(final Font font) {
+		// NB: Fonts with a transform, extra attributes or a fractional size
+		// aren't described by the key
+		if (font == null || font.isTransformed() || font.hasLayoutAttributes() ||
+			font.getSize2D() != font.getSize()) return font;
+		final Key key = new Key(font.getName(), font.getStyle(), font.getSize());
+		final Font cached = FONTS.putIfAbsent(key, font);
+		return cached == null ? font : cached;
+	}
+
+	// -- Helper methods --
+
+	private static Integer fontSize(final ShapeSettingsData settings) {
+		try {
+			final Length size = settings.getFontSize(UnitsLength.POINT);
+			if (size == null) return null;
+			return (int) size.getValue();
+		}
+		catch (final BigResult exc) {
+			return null;
+		}
+	}
+
+	private static int style(final String style) {
+		if (ShapeSettingsData.FONT_BOLD_ITALIC.equals(style)) return Font.BOLD |
+			Font.ITALIC;
+		if (ShapeSettingsData.FONT_BOLD.equals(style)) return Font.BOLD;
+		if (ShapeSettingsData.FONT_ITALIC.equals(style)) return Font.ITALIC;
+		return Font.PLAIN;
+	}
+
+	// -- Helper classes --
+
+	private static final class Key {
+
+		private final String family;
+		private final int style;
+		private final int size;
+
+		private Key(final String family, final int style, final int size) {
+			this.family = family;
+			this.style = style;
+			this.size = size;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (!(obj instanceof Key)) return false;
+			final Key other = (Key) obj;
+			return style == other.style && size == other.size && family.equals(
+				other.family);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(family, style, size);
+		}
+	}
+}
@@ -44,7 +44,8 @@ import omero.gateway.model.TextData;
  * Technically text is not considered a ROI. This wrapper is only here to
  * facilitate conversions between OMERO and ImageJ 1.x. As such it throw an
  * {@link UnsupportedOperationException} for most {@link RealMaskRealInterval}
- * methods. It should <strong>NOT</strong> be used for other purposes!
+ * methods, with the exception of the bounds. It should <strong>NOT</strong> be
+ * used for other purposes!
  * </p>
  *
  * @author Alison Walter
@@ -174,25 +175,26 @@ public class OMEROText implements OMERORealMaskRealInterval<TextData> {
 	/**
 	 * {@inheritDoc}
 	 * <p>
-	 * Always throws an {@link UnsupportedOperationException}. Text is not
-	 * technically a ROI.
+	 * The bounds are computed from the font settings of the {@link TextData}
+	 * and the text, with the y coordinate being the top of the text.
 	 * </p>
 	 */
 	@Override
 	public double realMin(final int d) {
-		throw new UnsupportedOperationException("realMin");
+		return d == 0 ? getX() : getY();
 	}
 
 	/**
 	 * {@inheritDoc}
 	 * <p>
-	 * Always throws an {@link UnsupportedOperationException}. Text is not
-	 * technically a ROI.
+	 * The bounds are computed from the font settings of the {@link TextData}
+	 * and the text, with the y coordinate being the top of the text.
 	 * </p>
 	 */
 	@Override
 	public double realMax(final int d) {
-		throw new UnsupportedOperationException("realMax");
+		final TextBounds b = bounds();
+		return d == 0 ? getX() + b.width() : getY() + b.height();
 	}
 
 	// -- RealMask methods --
@@ -283,4 +285,11 @@ public class OMEROText implements OMERORealMaskRealInterval<TextData> {
 		return 2;
 	}
 
+	// -- Helper methods --
+
+	private TextBounds bounds() {
+		return TextBounds.get(text.getText(), FontCache.get(text
+			.getShapeSettings()));
+	}
+
 }
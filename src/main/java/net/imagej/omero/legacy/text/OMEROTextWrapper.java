@@ -25,6 +25,9 @@
 
 package net.imagej.omero.legacy.text;
 
+import java.awt.Font;
+import java.util.Objects;
+
 import ij.gui.TextRoi;
 
 import net.imagej.legacy.convert.roi.MaskPredicateWrapper;
@@ -44,10 +47,21 @@ public class OMEROTextWrapper extends TextRoi implements
 
 	private final OMEROText text;
 
+	// NB: State of the TextData as of the last synchronize, so unchanged text
+	// isn't written back (and marked dirty)
+	private String syncedText;
+	private double syncedX;
+	private double syncedY;
+	private Font syncedFont;
+
 	public OMEROTextWrapper(final OMEROText text) {
-		super(text.getX(), text.getY(), text.getText(), text.getShape()
-			.getShapeSettings().getFont());
+		super(text.getX(), text.getY(), text.getText(), FontCache.get(text
+			.getShape().getShapeSettings()));
 		this.text = text;
+		syncedText = getText();
+		syncedX = getXBase();
+		syncedY = getYBase();
+		syncedFont = getCurrentFont();
 	}
 
 	@Override
@@ -55,27 +69,51 @@ public class OMEROTextWrapper extends TextRoi implements
 		return text;
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Only properties which changed since the last synchronization are written
+	 * to the underlying {@link omero.gateway.model.TextData TextData}. If nothing
+	 * changed, it is left untouched.
+	 * </p>
+	 */
 	@Override
 	public void synchronize() {
-		text.setText(getText());
-		text.setX(getXBase());
-		text.setY(getYBase());
-		text.getShape().getShapeSettings().setFontFamily(getCurrentFont()
-			.getFamily());
-		text.getShape().getShapeSettings().setFontSize(new LengthI(getCurrentFont()
-			.getSize(), UnitsLength.POINT));
-		text.getShape().getShapeSettings().setFontStyle(computeStyle());
+		final String currentText = getText();
+		if (!Objects.equals(currentText, syncedText)) {
+			text.setText(currentText);
+			syncedText = currentText;
+		}
+
+		final double x = getXBase();
+		final double y = getYBase();
+		if (x != syncedX) {
+			text.setX(x);
+			syncedX = x;
+		}
+		if (y != syncedY) {
+			text.setY(y);
+			syncedY = y;
+		}
+
+		final Font font = FontCache.intern(getCurrentFont());
+		if (!font.equals(syncedFont)) {
+			final ShapeSettingsData settings = text.getShape().getShapeSettings();
+			settings.setFontFamily(font.getFamily());
+			settings.setFontSize(new LengthI(font.getSize(), UnitsLength.POINT));
+			settings.setFontStyle(computeStyle(font));
+			syncedFont = font;
+		}
 	}
 
 	// -- Helper methods --
 
-	private String computeStyle() {
-		if (getCurrentFont().isBold()) {
-			if (getCurrentFont().isItalic())
-				return ShapeSettingsData.FONT_BOLD_ITALIC;
+	private String computeStyle(final Font font) {
+		if (font.isBold()) {
+			if (font.isItalic()) return ShapeSettingsData.FONT_BOLD_ITALIC;
 			return ShapeSettingsData.FONT_BOLD;
 		}
-		else if (getCurrentFont().isItalic()) return ShapeSettingsData.FONT_ITALIC;
+		else if (font.isItalic()) return ShapeSettingsData.FONT_ITALIC;
 		return ShapeSettingsData.FONT_REGULAR;
 	}
 }
@@ -0,0 +1,146 @@
+/*-
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2018 - 2023 Open Microscopy Environment:
+ * 	- Board of Regents of the University of Wisconsin-Madison
+ * 	- Glencoe Software, Inc.
+ * 	- University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package net.imagej.omero.legacy.text;
+
+import java.awt.Font;
+import java.awt.font.FontRenderContext;
+import java.awt.font.LineMetrics;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The extent of a (possibly multi-line) string rendered in a given
+ * {@link Font}. Extents are computed from the font metrics and cached per
+ * (text, font) pair, so label annotations which share the same text and font
+ * only measure it once.
+ * <p>
+ * The extent is measured from the top left corner of the text, which is how
+ * both ImageJ and this component position text.
+ * </p>
+ */
+final class TextBounds {
+
+	private static final int MAX_CACHE_SIZE = 4096;
+
+	private static final FontRenderContext FRC = new FontRenderContext(null,
+		true, true);
+
+	private static final Map<Key, TextBounds> CACHE = Collections
+		.synchronizedMap(new LinkedHashMap<Key, TextBounds>(64, 0.75f, true) {
+
+			@Override
+			protected boolean removeEldestEntry(
+				final Map.Entry<Key, TextBounds> eldest)
+			{
+				return size() > MAX_CACHE_SIZE;
+			}
+		});
+
+	private final double width;
+	private final double height;
+
+	private TextBounds(final double width, final double height) {
+		this.width = width;
+		this.height = height;
+	}
+
+	/**
+	 * Returns the extent of the given text rendered in the given font.
+	 *
+	 * @param text the text, lines are separated by {@code '\n'}
+	 * @param font the font the text is rendered in
+	 * @return the (possibly cached) extent of the text
+	 */
+	public static TextBounds get(final String text, final Font font) {
+		final Key key = new Key(text == null ? "" : text, font);
+		TextBounds bounds = CACHE.get(key);
+		if (bounds == null) {
+			bounds = compute(key.text, font);
+			CACHE.put(key, bounds);
+		}
+		return bounds;
+	}
+
+	/** Returns the width of the widest line. */
+	public double width() {
+		return width;
+	}
+
+	/** Returns the total height of all lines. */
+	public double height() {
+		return height;
+	}
+
+	// -- Helper methods --
+
+	private static TextBounds compute(final String text, final Font font) {
+		if (text.isEmpty() || font == null) return new TextBounds(0, 0);
+
+		final String[] lines = text.split("\n", -1);
+		final LineMetrics lm = font.getLineMetrics(text, FRC);
+		final double lineHeight = lm.getAscent() + lm.getDescent() + lm
+			.getLeading();
+
+		double width = 0;
+		for (final String line : lines) {
+			if (line.isEmpty()) continue;
+			width = Math.max(width, font.getStringBounds(line, FRC).getWidth());
+		}
+
+		// NB: the last line has no trailing leading
+		final double height = lines.length * lineHeight - lm.getLeading();
+		return new TextBounds(width, height);
+	}
+
+	// -- Helper classes --
+
+	private static final class Key {
+
+		private final String text;
+		private final Font font;
+		private final int hash;
+
+		private Key(final String text, final Font font) {
+			this.text = text;
+			this.font = font;
+			hash = Objects.hash(text, font);
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (!(obj instanceof Key)) return false;
+			final Key other = (Key) obj;
+			return text.equals(other.text) && Objects.equals(font, other.font);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+}
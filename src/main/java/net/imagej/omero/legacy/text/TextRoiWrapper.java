@@ -25,6 +25,8 @@
 
 package net.imagej.omero.legacy.text;
 
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
 import java.util.function.Predicate;
 
 import ij.gui.TextRoi;
@@ -145,25 +147,27 @@ public class TextRoiWrapper implements IJRealRoiWrapper<TextRoi> {
 	/**
 	 * {@inheritDoc}
 	 * <p>
-	 * Always throws an {@link UnsupportedOperationException}. Text is not
-	 * technically a ROI.
+	 * The bounds are those of the {@link TextRoi}, which account for its font,
+	 * justification and rotation.
 	 * </p>
 	 */
 	@Override
 	public double realMin(final int d) {
-		throw new UnsupportedOperationException("realMin");
+		final Rectangle2D b = bounds();
+		return d == 0 ? b.getMinX() : b.getMinY();
 	}
 
 	/**
 	 * {@inheritDoc}
 	 * <p>
-	 * Always throws an {@link UnsupportedOperationException}. Text is not
-	 * technically a ROI.
+	 * The bounds are those of the {@link TextRoi}, which account for its font,
+	 * justification and rotation.
 	 * </p>
 	 */
 	@Override
 	public double realMax(final int d) {
-		throw new UnsupportedOperationException("realMax");
+		final Rectangle2D b = bounds();
+		return d == 0 ? b.getMaxX() : b.getMaxY();
 	}
 
 	// -- RealMask methods --
@@ -254,4 +258,16 @@ public class TextRoiWrapper implements IJRealRoiWrapper<TextRoi> {
 		return 2;
 	}
 
+	// -- Helper methods --
+
+	private Rectangle2D bounds() {
+		final Rectangle2D box = roi.getFloatBounds();
+		final double angle = roi.getAngle();
+		if (angle == 0) return box;
+		// NB: Text is rotated counterclockwise about the center of its box
+		return AffineTransform.getRotateInstance(Math.toRadians(-angle), box
+			.getCenterX(), box.getCenterY()).createTransformedShape(box)
+			.getBounds2D();
+	}
+
 }